@@ -40,13 +40,33 @@ public class Block {
      * @return the hash of the current block
      */
     public String calculateHash() {
-        String calculatedhash = StringUtil.applySha256(
+        return calculateHash(nonce);
+    }
+
+    /**
+     * Calculates the hash the block would have with a given nonce.
+     *
+     * @param nonce nonce to be tried
+     * @return the hash of the current block with the nonce
+     */
+    String calculateHash(int nonce) {
+        return StringUtil.applySha256(
                 previousHash +
                         Long.toString(timeStamp) +
                         Integer.toString(nonce) +
                         data);
+    }
 
-        return calculatedhash;
+    /**
+     * Returns the byte level header used to mine the block. Everything except
+     * the nonce is encoded up front.
+     *
+     * @param difficulty number of 0’s that a block hash should start with
+     * @return the proof-of-work of the current block
+     */
+    ProofOfWork getProofOfWork(int difficulty) {
+        return new ProofOfWork(previousHash + Long.toString(timeStamp), data,
+                difficulty);
     }
 
     /**
@@ -61,14 +81,22 @@ public class Block {
      *                   proof-of-work
      */
     public void mineBlock(int difficulty) {
-        //Create a string with difficulty * "0"
-        String target = new String(new char[difficulty]).replace('\0',
-                '0');
+        mineBlock(difficulty, Miner.getDefault());
+    }
+
+    /**
+     * Mines the block by searching the nonce space in parallel on the
+     * workers of a miner.
+     *
+     * @param difficulty number of 0’s that a block hash should start with
+     * @param miner      miner doing the proof-of-work
+     */
+    public void mineBlock(int difficulty, Miner miner) {
+        Miner.Result result = miner.mine(this, difficulty);
+        nonce = result.getNonce();
+        hash = result.getHash();
 
-        while (!hash.substring(0, difficulty).equals(target)) {
-            nonce++;
-            hash = calculateHash();
-        }
-        System.out.println("Block Mined!!! : " + hash);
+        System.out.println("Block Mined!!! : " + hash + " (nonce " + nonce
+                + ")");
     }
 }
@@ -0,0 +1,158 @@
+package com.basaki.noobchain;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import lombok.Getter;
+
+/**
+ * {@code Miner} does the proof-of-work of a block in parallel. The nonce
+ * space is handed out to the workers of a {@code ForkJoinPool} in small
+ * chunks, so that fast workers never wait on slow ones. As soon as one worker
+ * finds a nonce which produces a valid hash, every other worker stops.
+ */
+@SuppressWarnings({"squid:S00112"})
+public class Miner {
+
+    // number of nonces a worker claims at a time
+    private static final int CHUNK_SIZE = 1 << 14;
+
+    private final ForkJoinPool pool;
+
+    @Getter
+    private final int parallelism;
+
+    /**
+     * Creates a miner with one worker per available processor.
+     */
+    public Miner() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Creates a miner with its own pool of workers.
+     *
+     * @param parallelism number of worker threads
+     */
+    public Miner(int parallelism) {
+        this(new ForkJoinPool(parallelism));
+    }
+
+    /**
+     * Creates a miner which runs its workers on an existing pool.
+     *
+     * @param pool the pool used for mining
+     */
+    public Miner(ForkJoinPool pool) {
+        this.pool = pool;
+        this.parallelism = pool.getParallelism();
+    }
+
+    /**
+     * Returns the miner shared by blocks which are mined without an explicit
+     * miner.
+     *
+     * @return the default miner
+     */
+    public static Miner getDefault() {
+        return DefaultHolder.INSTANCE;
+    }
+
+    /**
+     * Searches the nonce space of a block for a hash which starts with
+     * {@code difficulty} number of 0's.
+     *
+     * @param block      block to be mined
+     * @param difficulty number of 0’s that a block hash should start with
+     * @return the winning nonce and its hash
+     * @throws IllegalArgumentException if the difficulty is out of range
+     */
+    public Result mine(Block block, int difficulty) {
+        ProofOfWork pow = block.getProofOfWork(
+                ProofOfWork.checkDifficulty(difficulty));
+
+        AtomicLong nextNonce = new AtomicLong();
+        AtomicBoolean found = new AtomicBoolean();
+        AtomicReference<Result> winner = new AtomicReference<>();
+
+        List<Callable<Long>> workers = new ArrayList<>(parallelism);
+        for (int i = 0; i < parallelism; i++) {
+            workers.add(() -> {
+                ProofOfWork.Attempt attempt = pow.newAttempt();
+                long attempts = 0;
+                while (!found.get()) {
+                    long start = nextNonce.getAndAdd(CHUNK_SIZE);
+                    if (start > Integer.MAX_VALUE) {
+                        break;
+                    }
+                    long end = Math.min(start + CHUNK_SIZE,
+                            Integer.MAX_VALUE + 1L);
+                    for (long n = start; n < end && !found.get(); n++) {
+                        attempts++;
+                        if (attempt.test((int) n)
+                                && found.compareAndSet(false, true)) {
+                            // hex encode only the winning hash
+                            winner.set(new Result((int) n,
+                                    StringUtil.toString(attempt.getHash())));
+                        }
+                    }
+                }
+                return attempts;
+            });
+        }
+
+        long attempts = 0;
+        try {
+            for (Future<Long> future : pool.invokeAll(workers)) {
+                attempts += future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        }
+
+        Result result = winner.get();
+        if (result == null) {
+            throw new IllegalStateException(
+                    "Nonce space exhausted at difficulty " + difficulty);
+        }
+        result.attempts = attempts;
+
+        return result;
+    }
+
+    /**
+     * {@code Result} is the outcome of a proof-of-work search.
+     */
+    public static class Result {
+
+        // the nonce which solved the proof-of-work
+        @Getter
+        private final int nonce;
+
+        // the block hash produced by the winning nonce
+        @Getter
+        private final String hash;
+
+        // number of hashes computed by all the workers
+        @Getter
+        private long attempts;
+
+        Result(int nonce, String hash) {
+            this.nonce = nonce;
+            this.hash = hash;
+        }
+    }
+
+    private static class DefaultHolder {
+        private static final Miner INSTANCE = new Miner();
+    }
+}
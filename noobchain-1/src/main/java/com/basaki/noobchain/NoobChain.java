@@ -1,6 +1,14 @@
 package com.basaki.noobchain;
 
+import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
 import java.util.ArrayList;
 import java.util.List;
 import lombok.extern.slf4j.Slf4j;
@@ -14,8 +22,26 @@ public class NoobChain {
 
     private static final int DIFFICULTY = 5;
 
+    private static final Gson GSON =
+            new GsonBuilder().disableHtmlEscaping().create();
+
     private List<Block> blockchain = new ArrayList<>();
 
+    private final Miner miner;
+
+    public NoobChain() {
+        this(Miner.getDefault());
+    }
+
+    /**
+     * Creates a blockchain whose blocks are mined by the given miner.
+     *
+     * @param miner miner doing the proof-of-work of new blocks
+     */
+    public NoobChain(Miner miner) {
+        this.miner = miner;
+    }
+
     public synchronized void addBlock(String data) {
         Block block;
         if (blockchain.isEmpty()) {
@@ -30,7 +56,7 @@ public class NoobChain {
         //add block to the blockchain list
         blockchain.add(block);
 
-        block.mineBlock(DIFFICULTY);
+        block.mineBlock(DIFFICULTY, miner);
     }
 
     /**
@@ -49,30 +75,102 @@ public class NoobChain {
     public Boolean isChainValid() {
         // loop through blockchain to check hashes
         for (int i = 1; i < blockchain.size(); i++) {
-            Block currentBlock = blockchain.get(i);
-            Block previousBlock = blockchain.get(i - 1);
-
-            // compare current block's hash with calculated hash
-            if (!currentBlock.getHash().equals(currentBlock.calculateHash())) {
-                log.info("Calculated hash doesn't match block's hash.");
+            if (!isValidSuccessor(blockchain.get(i - 1), blockchain.get(i))) {
                 return false;
             }
+        }
+        return true;
+    }
 
-            // compare previous hash with current block's previous hash
-            if (!previousBlock.getHash().equals(
-                    currentBlock.getPreviousHash())) {
-                log.info(
-                        "Previous block hash doesn't match curent block's previous hash.");
-                return false;
-            }
+    private static boolean isValidSuccessor(Block previousBlock,
+            Block currentBlock) {
+        // compare current block's hash with calculated hash
+        if (!currentBlock.getHash().equals(currentBlock.calculateHash())) {
+            log.info("Calculated hash doesn't match block's hash.");
+            return false;
         }
+
+        // compare previous hash with current block's previous hash
+        if (!previousBlock.getHash().equals(currentBlock.getPreviousHash())) {
+            log.info(
+                    "Previous block hash doesn't match curent block's previous hash.");
+            return false;
+        }
+
         return true;
     }
 
     public String jsonString() {
-        return new GsonBuilder().disableHtmlEscaping()
-                .setPrettyPrinting()
-                .create().toJson(blockchain);
+        StringWriter out = new StringWriter();
+        writeJson(out);
+
+        return out.toString();
+    }
+
+    /**
+     * Writes the blockchain as a pretty printed JSON array. The blocks are
+     * written one at a time, so the JSON of the whole chain is never held in
+     * memory.
+     *
+     * @param out writer the JSON is written to, it's flushed but not closed
+     */
+    public void writeJson(Writer out) {
+        List<Block> blocks;
+        synchronized (this) {
+            blocks = new ArrayList<>(blockchain);
+        }
+
+        try {
+            JsonWriter writer = new JsonWriter(out);
+            writer.setIndent("  ");
+            writer.beginArray();
+            for (Block block : blocks) {
+                GSON.toJson(block, Block.class, writer);
+            }
+            writer.endArray();
+            writer.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Reads a blockchain written by {@code writeJson}. The blocks are read
+     * one at a time and every block is validated against the block before it
+     * as soon as it's read, so an invalid export fails without reading the
+     * rest of it.
+     *
+     * @param in reader the JSON is read from, it isn't closed
+     * @return the blockchain
+     * @throws IllegalArgumentException if a block is invalid
+     */
+    public static NoobChain readJson(Reader in) {
+        NoobChain chain = new NoobChain();
+
+        try {
+            JsonReader reader = new JsonReader(in);
+            reader.beginArray();
+            while (reader.hasNext()) {
+                Block block = GSON.fromJson(reader, Block.class);
+
+                int height = chain.blockchain.size();
+                boolean valid = height == 0
+                        ? block.getHash().equals(block.calculateHash())
+                        : isValidSuccessor(chain.blockchain.get(height - 1),
+                                block);
+                if (!valid) {
+                    throw new IllegalArgumentException(
+                            "Block " + height + " is invalid.");
+                }
+
+                chain.blockchain.add(block);
+            }
+            reader.endArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        return chain;
     }
 
     public static void main(String[] args) {
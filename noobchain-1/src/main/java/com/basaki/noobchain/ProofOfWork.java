@@ -0,0 +1,145 @@
+package com.basaki.noobchain;
+
+import java.nio.charset.StandardCharsets;
+import lombok.Getter;
+
+/**
+ * {@code ProofOfWork} is the byte level form of a block header used while
+ * mining. The header bytes before the nonce never change between attempts, so
+ * they are absorbed once into a SHA-256 midstate. Every attempt restarts from
+ * the midstate and hashes only the decimal digits of its nonce and the bytes
+ * after it, which saves the compression of every complete 64 byte block of
+ * the prefix. The mining loop doesn't allocate.
+ */
+class ProofOfWork {
+
+    // a hash has as many hexadecimal digits
+    static final int MAX_DIFFICULTY = Sha256.HASH_LENGTH * 2;
+
+    // an int never has more than 10 digits and a sign
+    private static final int MAX_NONCE_LENGTH = 11;
+
+    // hasher state after absorbing the header bytes before the nonce
+    private final Sha256 midstate;
+
+    private final byte[] suffix;
+
+    @Getter
+    private final int difficulty;
+
+    /**
+     * Creates the proof-of-work of a block header.
+     *
+     * @param prefix     the header string which comes before the nonce
+     * @param suffix     the header string which comes after the nonce
+     * @param difficulty number of 0’s that a block hash should start with
+     * @throws IllegalArgumentException if the difficulty is out of range
+     */
+    ProofOfWork(String prefix, String suffix, int difficulty) {
+        this.midstate =
+                new Sha256().update(prefix.getBytes(StandardCharsets.UTF_8));
+        this.suffix = suffix.getBytes(StandardCharsets.UTF_8);
+        this.difficulty = checkDifficulty(difficulty);
+    }
+
+    /**
+     * Checks that a difficulty can be met by a hash, so that the mining loop
+     * doesn't have to.
+     *
+     * @param difficulty number of 0’s that a block hash should start with
+     * @return the difficulty
+     * @throws IllegalArgumentException if the difficulty is negative or
+     *                                  larger than the number of digits of a
+     *                                  hash
+     */
+    static int checkDifficulty(int difficulty) {
+        if (difficulty < 0 || difficulty > MAX_DIFFICULTY) {
+            throw new IllegalArgumentException("Difficulty " + difficulty
+                    + " isn't between 0 and " + MAX_DIFFICULTY);
+        }
+
+        return difficulty;
+    }
+
+    /**
+     * Creates the hashing state of a single mining worker. An attempt has to
+     * stay on the thread which created it.
+     *
+     * @return a new attempt
+     */
+    Attempt newAttempt() {
+        return new Attempt();
+    }
+
+    /**
+     * {@code Attempt} hashes the header for one nonce at a time.
+     */
+    class Attempt {
+
+        private final Sha256 sha256 = new Sha256();
+
+        // the nonce digits followed by the suffix
+        private final byte[] buffer =
+                new byte[MAX_NONCE_LENGTH + suffix.length];
+
+        @Getter
+        private final byte[] hash = new byte[Sha256.HASH_LENGTH];
+
+        // number of nonce bytes the suffix is currently placed after
+        private int nonceLength = -1;
+
+        private Attempt() {
+        }
+
+        /**
+         * Hashes the header with the given nonce.
+         *
+         * @param nonce nonce to be tried
+         * @return true if the hash satisfies the difficulty
+         */
+        boolean test(int nonce) {
+            int length = writeNonce(nonce);
+            sha256.copyFrom(midstate)
+                    .update(buffer, 0, length)
+                    .digest(hash, 0);
+
+            return StringUtil.hasLeadingZeros(hash, difficulty);
+        }
+
+        /**
+         * Writes the decimal digits of a nonce at the start of the buffer and
+         * moves the suffix only if the number of digits changed.
+         *
+         * @param nonce nonce to be written
+         * @return number of bytes to be hashed after the midstate
+         */
+        private int writeNonce(int nonce) {
+            long value = nonce;
+            boolean negative = value < 0;
+            if (negative) {
+                value = -value;
+            }
+
+            int length = negative ? 2 : 1;
+            for (long v = value; v >= 10; v /= 10) {
+                length++;
+            }
+
+            int pos = length;
+            do {
+                buffer[--pos] = (byte) ('0' + (value % 10));
+                value /= 10;
+            } while (value > 0);
+            if (negative) {
+                buffer[--pos] = '-';
+            }
+
+            if (length != nonceLength) {
+                System.arraycopy(suffix, 0, buffer, length, suffix.length);
+                nonceLength = length;
+            }
+
+            return length + suffix.length;
+        }
+    }
+}
@@ -0,0 +1,238 @@
+package com.basaki.noobchain;
+
+/**
+ * {@code Sha256} is a SHA-256 hasher whose intermediate state can be copied.
+ * A message prefix which is shared by many messages can be absorbed once into
+ * a {@code midstate}. Every message then starts from a copy of the midstate
+ * and only hashes its remaining bytes. The hasher doesn't allocate after it's
+ * created and isn't thread-safe.
+ */
+@SuppressWarnings({"squid:S109"})
+public final class Sha256 {
+
+    public static final int HASH_LENGTH = 32;
+
+    private static final int BLOCK_LENGTH = 64;
+
+    private static final int[] INITIAL_STATE = {
+            0x6a09e667, 0xbb67ae85, 0x3c6ef372, 0xa54ff53a,
+            0x510e527f, 0x9b05688c, 0x1f83d9ab, 0x5be0cd19
+    };
+
+    private static final int[] K = {
+            0x428a2f98, 0x71374491, 0xb5c0fbcf, 0xe9b5dba5,
+            0x3956c25b, 0x59f111f1, 0x923f82a4, 0xab1c5ed5,
+            0xd807aa98, 0x12835b01, 0x243185be, 0x550c7dc3,
+            0x72be5d74, 0x80deb1fe, 0x9bdc06a7, 0xc19bf174,
+            0xe49b69c1, 0xefbe4786, 0x0fc19dc6, 0x240ca1cc,
+            0x2de92c6f, 0x4a7484aa, 0x5cb0a9dc, 0x76f988da,
+            0x983e5152, 0xa831c66d, 0xb00327c8, 0xbf597fc7,
+            0xc6e00bf3, 0xd5a79147, 0x06ca6351, 0x14292967,
+            0x27b70a85, 0x2e1b2138, 0x4d2c6dfc, 0x53380d13,
+            0x650a7354, 0x766a0abb, 0x81c2c92e, 0x92722c85,
+            0xa2bfe8a1, 0xa81a664b, 0xc24b8b70, 0xc76c51a3,
+            0xd192e819, 0xd6990624, 0xf40e3585, 0x106aa070,
+            0x19a4c116, 0x1e376c08, 0x2748774c, 0x34b0bcb5,
+            0x391c0cb3, 0x4ed8aa4a, 0x5b9cca4f, 0x682e6ff3,
+            0x748f82ee, 0x78a5636f, 0x84c87814, 0x8cc70208,
+            0x90befffa, 0xa4506ceb, 0xbef9a3f7, 0xc67178f2
+    };
+
+    private final int[] state = new int[8];
+
+    // message schedule, kept to avoid an allocation per compression
+    private final int[] w = new int[64];
+
+    // bytes which haven't filled a complete block yet
+    private final byte[] buffer = new byte[BLOCK_LENGTH];
+
+    private int bufferLength;
+
+    // total number of bytes hashed since the last reset
+    private long count;
+
+    public Sha256() {
+        reset();
+    }
+
+    /**
+     * Brings the hasher back to its initial state.
+     *
+     * @return this hasher
+     */
+    public Sha256 reset() {
+        System.arraycopy(INITIAL_STATE, 0, state, 0, state.length);
+        bufferLength = 0;
+        count = 0;
+        return this;
+    }
+
+    /**
+     * Replaces the state of this hasher with the state of another one, e.g.,
+     * to restart from a midstate.
+     *
+     * @param other hasher whose state is copied
+     * @return this hasher
+     */
+    public Sha256 copyFrom(Sha256 other) {
+        System.arraycopy(other.state, 0, state, 0, state.length);
+        System.arraycopy(other.buffer, 0, buffer, 0, other.bufferLength);
+        bufferLength = other.bufferLength;
+        count = other.count;
+        return this;
+    }
+
+    /**
+     * Creates a new hasher with the same state as this one.
+     *
+     * @return a copy of this hasher
+     */
+    public Sha256 copy() {
+        return new Sha256().copyFrom(this);
+    }
+
+    public Sha256 update(byte[] input) {
+        return update(input, 0, input.length);
+    }
+
+    /**
+     * Adds bytes to the message being hashed.
+     *
+     * @param input  the input bytes
+     * @param offset offset of the first byte to be hashed
+     * @param length number of bytes to be hashed
+     * @return this hasher
+     */
+    public Sha256 update(byte[] input, int offset, int length) {
+        count += length;
+
+        if (bufferLength > 0) {
+            int n = Math.min(length, BLOCK_LENGTH - bufferLength);
+            System.arraycopy(input, offset, buffer, bufferLength, n);
+            bufferLength += n;
+            offset += n;
+            length -= n;
+            if (bufferLength < BLOCK_LENGTH) {
+                return this;
+            }
+            compress(buffer, 0);
+            bufferLength = 0;
+        }
+
+        while (length >= BLOCK_LENGTH) {
+            compress(input, offset);
+            offset += BLOCK_LENGTH;
+            length -= BLOCK_LENGTH;
+        }
+
+        System.arraycopy(input, offset, buffer, 0, length);
+        bufferLength = length;
+
+        return this;
+    }
+
+    /**
+     * Completes the hash and resets the hasher.
+     *
+     * @return the 32 byte hash
+     */
+    public byte[] digest() {
+        byte[] hash = new byte[HASH_LENGTH];
+        digest(hash, 0);
+        return hash;
+    }
+
+    /**
+     * Completes the hash, writes it into an existing array and resets the
+     * hasher.
+     *
+     * @param output array receiving the hash
+     * @param offset position of the first hash byte in the array
+     */
+    public void digest(byte[] output, int offset) {
+        long bitCount = count << 3;
+
+        buffer[bufferLength++] = (byte) 0x80;
+        if (bufferLength > BLOCK_LENGTH - 8) {
+            fill(bufferLength, BLOCK_LENGTH);
+            compress(buffer, 0);
+            bufferLength = 0;
+        }
+        fill(bufferLength, BLOCK_LENGTH - 8);
+        for (int i = 0; i < 8; i++) {
+            buffer[BLOCK_LENGTH - 1 - i] = (byte) (bitCount >>> (i * 8));
+        }
+        compress(buffer, 0);
+
+        for (int i = 0; i < state.length; i++) {
+            int s = state[i];
+            output[offset + i * 4] = (byte) (s >>> 24);
+            output[offset + i * 4 + 1] = (byte) (s >>> 16);
+            output[offset + i * 4 + 2] = (byte) (s >>> 8);
+            output[offset + i * 4 + 3] = (byte) s;
+        }
+
+        reset();
+    }
+
+    private void fill(int from, int to) {
+        for (int i = from; i < to; i++) {
+            buffer[i] = 0;
+        }
+    }
+
+    private void compress(byte[] input, int offset) {
+        for (int i = 0; i < 16; i++) {
+            int p = offset + i * 4;
+            w[i] = (input[p] << 24) | ((input[p + 1] & 0xff) << 16)
+                    | ((input[p + 2] & 0xff) << 8) | (input[p + 3] & 0xff);
+        }
+        for (int i = 16; i < 64; i++) {
+            int w15 = w[i - 15];
+            int w2 = w[i - 2];
+            int s0 = Integer.rotateRight(w15, 7)
+                    ^ Integer.rotateRight(w15, 18) ^ (w15 >>> 3);
+            int s1 = Integer.rotateRight(w2, 17)
+                    ^ Integer.rotateRight(w2, 19) ^ (w2 >>> 10);
+            w[i] = w[i - 16] + s0 + w[i - 7] + s1;
+        }
+
+        int a = state[0];
+        int b = state[1];
+        int c = state[2];
+        int d = state[3];
+        int e = state[4];
+        int f = state[5];
+        int g = state[6];
+        int h = state[7];
+
+        for (int i = 0; i < 64; i++) {
+            int s1 = Integer.rotateRight(e, 6) ^ Integer.rotateRight(e, 11)
+                    ^ Integer.rotateRight(e, 25);
+            int ch = (e & f) ^ (~e & g);
+            int t1 = h + s1 + ch + K[i] + w[i];
+            int s0 = Integer.rotateRight(a, 2) ^ Integer.rotateRight(a, 13)
+                    ^ Integer.rotateRight(a, 22);
+            int maj = (a & b) ^ (a & c) ^ (b & c);
+            int t2 = s0 + maj;
+
+            h = g;
+            g = f;
+            f = e;
+            e = d + t1;
+            d = c;
+            c = b;
+            b = a;
+            a = t1 + t2;
+        }
+
+        state[0] += a;
+        state[1] += b;
+        state[2] += c;
+        state[3] += d;
+        state[4] += e;
+        state[5] += f;
+        state[6] += g;
+        state[7] += h;
+    }
+}
@@ -1,24 +1,64 @@
 package com.basaki.noobchain;
 
+import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 
 public class StringUtil {
 
+    private static final int INT_BIT_MASK = 0xff;
+
+    private static final int NIBBLE_BIT_MASK = 0x0f;
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    // a SHA-256 digest per thread, avoids a provider lookup for every hash
+    private static final ThreadLocal<MessageDigest> SHA_256 =
+            ThreadLocal.withInitial(StringUtil::newSha256Digest);
+
     //Applies Sha256 to a string and returns the result.
     public static String applySha256(String input) {
-        try {
-            MessageDigest digest = MessageDigest.getInstance("SHA-256");
-            //Applies sha256 to our input,
-            byte[] hash = digest.digest(input.getBytes("UTF-8"));
-            StringBuffer hexString =
-                    new StringBuffer(); // This will contain hash as hexidecimal
-            for (int i = 0; i < hash.length; i++) {
-                String hex = Integer.toHexString(0xff & hash[i]);
-                if (hex.length() == 1) hexString.append('0');
-                hexString.append(hex);
+        MessageDigest digest = getSha256Digest();
+        //Applies sha256 to our input,
+        byte[] hash = digest.digest(input.getBytes(StandardCharsets.UTF_8));
+        return toString(hash);
+    }
+
+    //Returns the reset SHA-256 digest of the current thread.
+    public static MessageDigest getSha256Digest() {
+        MessageDigest digest = SHA_256.get();
+        digest.reset();
+        return digest;
+    }
+
+    //Converts a byte array to a hexdecimal string.
+    public static String toString(byte[] bytes) {
+        char[] hex = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            int b = INT_BIT_MASK & bytes[i];
+            hex[i * 2] = HEX_DIGITS[b >>> 4];
+            hex[i * 2 + 1] = HEX_DIGITS[b & NIBBLE_BIT_MASK];
+        }
+        return new String(hex);
+    }
+
+    //Checks if the hexdecimal form of a raw hash starts with difficulty 0's.
+    public static boolean hasLeadingZeros(byte[] hash, int difficulty) {
+        int fullBytes = difficulty >>> 1;
+        for (int i = 0; i < fullBytes; i++) {
+            if (hash[i] != 0) {
+                return false;
             }
-            return hexString.toString();
-        } catch (Exception e) {
+        }
+
+        return (difficulty & 1) == 0
+                || (hash[fullBytes] & (NIBBLE_BIT_MASK << 4)) == 0;
+    }
+
+    private static MessageDigest newSha256Digest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
             throw new RuntimeException(e);
         }
     }
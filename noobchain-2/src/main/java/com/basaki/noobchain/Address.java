@@ -0,0 +1,90 @@
+package com.basaki.noobchain;
+
+import java.security.PublicKey;
+import java.util.Arrays;
+
+/**
+ * {@code Address} identifies the owner of noob coins by the SHA-256 hash of
+ * the X.509 encoding of the owner's public key. Unlike a public key, two
+ * addresses of the same key are always equal, whether the key was generated
+ * by a wallet or decoded from a block. An address is hashed once, when it's
+ * created, so it's cheap to compare and to use as a map key.
+ */
+public final class Address {
+
+    // length of an address in bytes
+    public static final int LENGTH = 32;
+
+    private final byte[] hash;
+
+    private final int hashCode;
+
+    private String hex;
+
+    private Address(byte[] hash) {
+        this.hash = hash;
+        this.hashCode = Arrays.hashCode(hash);
+    }
+
+    /**
+     * Creates the address of a public key.
+     *
+     * @param key the public key
+     * @return the address of the key
+     */
+    public static Address of(PublicKey key) {
+        return new Address(StringUtil.getSha256Digest().digest(
+                key.getEncoded()));
+    }
+
+    /**
+     * Recreates an address from its raw hash.
+     *
+     * @param hash the {@value #LENGTH} bytes of the address
+     * @return the address
+     */
+    public static Address fromBytes(byte[] hash) {
+        if (hash.length != LENGTH) {
+            throw new IllegalArgumentException(
+                    "Address must be " + LENGTH + " bytes long");
+        }
+
+        return new Address(hash.clone());
+    }
+
+    public byte[] toBytes() {
+        return hash.clone();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof Address)) {
+            return false;
+        }
+
+        Address other = (Address) o;
+        return hashCode == other.hashCode && Arrays.equals(hash, other.hash);
+    }
+
+    @Override
+    public int hashCode() {
+        return hashCode;
+    }
+
+    /**
+     * Returns the address as a hexadecimal string.
+     *
+     * @return the hexadecimal string of the hash
+     */
+    @Override
+    public String toString() {
+        if (hex == null) {
+            hex = StringUtil.toString(hash);
+        }
+
+        return hex;
+    }
+}
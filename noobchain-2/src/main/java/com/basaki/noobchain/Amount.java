@@ -0,0 +1,70 @@
+package com.basaki.noobchain;
+
+import java.math.BigDecimal;
+
+/**
+ * {@code Amount} converts amounts of noob coins from and to the
+ * {@code long} number of their smallest unit, which is how transactions,
+ * outputs and balances hold them. Unlike floating point coins, amounts in
+ * the smallest unit add up exactly, so sums of inputs and outputs can be
+ * compared for equality. Sums are checked for overflow.
+ */
+public final class Amount {
+
+    // number of decimal places of a noob coin
+    public static final int DECIMALS = 8;
+
+    // smallest units in one noob coin
+    public static final long COIN = 100_000_000L;
+
+    private Amount() {
+    }
+
+    /**
+     * Converts whole noob coins.
+     *
+     * @param coins number of noob coins
+     * @return the amount in the smallest unit
+     * @throws ArithmeticException if the amount doesn't fit in a long
+     */
+    public static long coins(long coins) {
+        return Math.multiplyExact(coins, COIN);
+    }
+
+    /**
+     * Parses a decimal number of noob coins, e.g., "12.5".
+     *
+     * @param coins number of noob coins with at most 8 decimal places
+     * @return the amount in the smallest unit
+     * @throws NumberFormatException if the text isn't a number
+     * @throws ArithmeticException   if the number has more decimal places
+     *                               or doesn't fit in a long
+     */
+    public static long parse(String coins) {
+        return new BigDecimal(coins).movePointRight(DECIMALS)
+                .longValueExact();
+    }
+
+    /**
+     * Adds two amounts.
+     *
+     * @throws ArithmeticException if the sum doesn't fit in a long
+     */
+    public static long add(long a, long b) {
+        return Math.addExact(a, b);
+    }
+
+    /**
+     * Formats an amount as a decimal number of noob coins, without trailing
+     * zeros.
+     *
+     * @param amount amount in the smallest unit
+     * @return the number of noob coins, e.g., "12.5"
+     */
+    public static String toString(long amount) {
+        BigDecimal coins = BigDecimal.valueOf(amount, DECIMALS)
+                .stripTrailingZeros();
+        return coins.scale() < 0 ? coins.setScale(0).toPlainString()
+                : coins.toPlainString();
+    }
+}
@@ -29,12 +29,39 @@ public class Block {
 
     private String merkleRoot;
 
+    // merkle root of the transactions, kept up to date as they're added
+    private transient MerkleAccumulator merkleAccumulator;
+
+    // tree of the transactions handing out merkle proofs, built on demand
+    private transient MerkleTree merkleTree;
+
     public Block(String previousHash) {
         this.previousHash = previousHash;
         this.timeStamp = new Date().getTime();
         this.hash = calculateHash();
     }
 
+    /**
+     * Recreates a block which has already been mined, e.g., one read from a
+     * block store.
+     *
+     * @param hash         hash of the block
+     * @param previousHash hash of the previous block
+     * @param timeStamp    creation time of the block
+     * @param nonce        nonce found by the proof-of-work
+     * @param merkleRoot   merkle root of the transactions
+     * @param transactions transactions of the block
+     */
+    Block(String hash, String previousHash, long timeStamp, int nonce,
+            String merkleRoot, List<Transaction> transactions) {
+        this.hash = hash;
+        this.previousHash = previousHash;
+        this.timeStamp = timeStamp;
+        this.nonce = nonce;
+        this.merkleRoot = merkleRoot;
+        this.transactions = transactions;
+    }
+
     /**
      * Calculates the hash of the current block from the previous block's hash,
      * timestamp, and data. If the previous block’s data is changed then the
@@ -46,12 +73,34 @@ public class Block {
      * @return the hash of the current block
      */
     public String calculateHash() {
+        return calculateHash(nonce);
+    }
+
+    /**
+     * Calculates the hash the block would have with a given nonce.
+     *
+     * @param nonce nonce to be tried
+     * @return the hash of the current block with the nonce
+     */
+    String calculateHash(int nonce) {
         return StringUtil.applySha256(previousHash +
                 Long.toString(timeStamp) +
                 Integer.toString(nonce) +
                 merkleRoot);
     }
 
+    /**
+     * Returns the byte level header used to mine the block. Everything except
+     * the nonce is encoded up front.
+     *
+     * @param difficulty number of 0’s that a block hash should start with
+     * @return the proof-of-work of the current block
+     */
+    ProofOfWork getProofOfWork(int difficulty) {
+        return new ProofOfWork(previousHash + Long.toString(timeStamp),
+                String.valueOf(merkleRoot), difficulty);
+    }
+
     /**
      * A blockchain mining is required to do `proof of work` by having the
      * block hash starts with a variable number of 0's. The parameter
@@ -64,38 +113,50 @@ public class Block {
      *                   proof-of-work
      */
     public void mineBlock(int difficulty) {
-        merkleRoot = StringUtil.getMerkleRoot(transactions);
+        mineBlock(difficulty, Miner.getDefault());
+    }
 
-        //Create a string with difficulty * "0"
-        String target = new String(new char[difficulty]).replace('\0',
-                '0');
+    /**
+     * Mines the block by searching the nonce space in parallel on the
+     * workers of a miner. The merkle root is taken from the accumulator, so
+     * mining again after more transactions were added doesn't hash the
+     * earlier transactions again.
+     *
+     * @param difficulty number of 0’s that a block hash should start with
+     * @param miner      miner doing the proof-of-work
+     */
+    public void mineBlock(int difficulty, Miner miner) {
+        merkleRoot = getMerkleAccumulator().getRootHash();
 
-        while (!hash.substring(0, difficulty).equals(target)) {
-            nonce++;
-            hash = calculateHash();
-        }
+        Miner.Result result = miner.mine(this, difficulty);
+        nonce = result.getNonce();
+        hash = result.getHash();
 
-        log.info("Block Mined!!! : " + hash);
+        log.info("Block Mined!!! : {} (nonce {} after {} hashes)", hash,
+                nonce, result.getAttempts());
     }
 
     /**
      * Adds a transaction to this block.
      *
      * @param transaction transaction to be added
+     * @param utxos       the unspent transaction outputs the transaction
+     *                    spends from
      * @return true if the transaction is valid, false otherwise
      */
-    public boolean addTransaction(Transaction transaction) {
+    public boolean addTransaction(Transaction transaction, UtxoStore utxos) {
         if (transaction == null) {
             return false;
         }
 
         // process transaction and check if it's valid
         // ignore checking if the block is a genesis block
-        if ((previousHash != "0") && !transaction.processTransaction()) {
+        if ((previousHash != "0") && !transaction.processTransaction(utxos)) {
             log.info("Transaction discarded as processing failed.");
             return false;
         }
         transactions.add(transaction);
+        getMerkleAccumulator().add(transaction.getTransactionId());
 
         log.info("Transaction Successfully added to Block");
 
@@ -105,4 +166,62 @@ public class Block {
     public List<Transaction> getTransactions() {
         return Collections.unmodifiableList(transactions);
     }
+
+    /**
+     * Creates the proof that one of the block's transactions is part of its
+     * merkle root.
+     *
+     * @param index index of the transaction in the block
+     * @return the inclusion proof
+     */
+    public MerkleTree.Proof getMerkleProof(int index) {
+        return getMerkleTree().getProof(index);
+    }
+
+    /**
+     * Returns the tree of the block's transactions. It's built on the first
+     * proof and kept for the next ones until a transaction is added.
+     *
+     * @return the tree covering all the transactions
+     */
+    private MerkleTree getMerkleTree() {
+        MerkleTree tree = merkleTree;
+        if (tree == null || tree.getLeafCount() != transactions.size()) {
+            tree = new MerkleTree(transactions);
+            merkleTree = tree;
+        }
+
+        return tree;
+    }
+
+    /**
+     * Returns the accumulator of the block's merkle root. It's rebuilt if the
+     * block was created without one, e.g., when it was read from a block
+     * store.
+     *
+     * @return the accumulator covering all the transactions
+     */
+    private MerkleAccumulator getMerkleAccumulator() {
+        if (merkleAccumulator == null
+                || merkleAccumulator.getSize() != transactions.size()) {
+            merkleAccumulator = new MerkleAccumulator();
+            for (Transaction transaction : transactions) {
+                merkleAccumulator.add(transaction.getTransactionId());
+            }
+        }
+
+        return merkleAccumulator;
+    }
+
+    long getTimeStamp() {
+        return timeStamp;
+    }
+
+    int getNonce() {
+        return nonce;
+    }
+
+    String getMerkleRoot() {
+        return merkleRoot;
+    }
 }
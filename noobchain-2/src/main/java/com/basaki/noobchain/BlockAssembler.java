@@ -0,0 +1,87 @@
+package com.basaki.noobchain;
+
+import java.util.List;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * {@code BlockAssembler} builds blocks out of the pending transactions of a
+ * mempool. Every block takes the transactions with the highest priority, up
+ * to a maximum number of transactions and a byte budget, so a single
+ * proof-of-work confirms a whole batch of transactions.
+ */
+@Slf4j
+public class BlockAssembler {
+
+    public static final int DEFAULT_MAX_TRANSACTIONS = 1000;
+
+    public static final int DEFAULT_MAX_BYTES = 1024 * 1024;
+
+    private final NoobChain chain;
+
+    private final Mempool mempool;
+
+    private final int maxTransactions;
+
+    private final int maxBytes;
+
+    public BlockAssembler(NoobChain chain, Mempool mempool) {
+        this(chain, mempool, DEFAULT_MAX_TRANSACTIONS, DEFAULT_MAX_BYTES);
+    }
+
+    /**
+     * Creates an assembler with its own block limits.
+     *
+     * @param chain           chain the blocks are added to, it must already
+     *                        have its genesis block
+     * @param mempool         the pending transactions of the chain
+     * @param maxTransactions maximum number of transactions in a block
+     * @param maxBytes        maximum encoded size of the transactions in a
+     *                        block
+     */
+    public BlockAssembler(NoobChain chain, Mempool mempool,
+            int maxTransactions, int maxBytes) {
+        this.chain = chain;
+        this.mempool = mempool;
+        this.maxTransactions = maxTransactions;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Mines a block with the pending transactions of the highest priority
+     * and adds it to the chain.
+     *
+     * @return the mined block or null if there are no pending transactions
+     */
+    public Block assembleBlock() {
+        List<Transaction> transactions = drain();
+        return transactions.isEmpty() ? null : mine(transactions);
+    }
+
+    /**
+     * Takes the transactions of the next block out of the mempool.
+     *
+     * @return the transactions in priority order
+     */
+    List<Transaction> drain() {
+        return mempool.drain(maxTransactions, maxBytes);
+    }
+
+    /**
+     * Mines a block with drained transactions and releases their inputs.
+     *
+     * @param transactions transactions taken out of the mempool
+     * @return the mined block
+     */
+    Block mine(List<Transaction> transactions) {
+        try {
+            Block block = chain.addBlock(transactions);
+            log.info("Assembled block {} with {} of {} transactions",
+                    block.getHash(), block.getTransactions().size(),
+                    transactions.size());
+
+            return block;
+        } finally {
+            mempool.release(transactions);
+        }
+    }
+}
@@ -0,0 +1,507 @@
+package com.basaki.noobchain;
+
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyFactory;
+import java.security.PublicKey;
+import java.security.spec.X509EncodedKeySpec;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import org.bouncycastle.jce.ECNamedCurveTable;
+import org.bouncycastle.jce.interfaces.ECPublicKey;
+import org.bouncycastle.jce.spec.ECNamedCurveParameterSpec;
+import org.bouncycastle.jce.spec.ECPublicKeySpec;
+
+/**
+ * {@code BlockCodec} is the binary format of blocks and transactions. It's a
+ * lot more compact than JSON:
+ * <ul>
+ * <li>hashes are written as their raw 32 bytes instead of 64 hex
+ * digits,</li>
+ * <li>public keys are written as compressed curve points,</li>
+ * <li>lengths, counts and amounts are written as unsigned varints.</li>
+ * </ul>
+ * A block or a transaction starts with the format version. The unspent
+ * output referenced by a transaction input isn't written, it's looked up in
+ * the unspent transaction outputs when the transaction is replayed.
+ * <p>
+ * Blocks and transactions are encoded into and decoded from the current
+ * position of a {@code ByteBuffer}, so several of them can follow each other
+ * in the same buffer.
+ */
+@SuppressWarnings({"squid:S00112"})
+public class BlockCodec {
+
+    public static final byte VERSION = 3;
+
+    private static final int INITIAL_BUFFER_SIZE = 64 * 1024;
+
+    private static final int MAX_CACHED_KEYS = 10_000;
+
+    // tags of the encoded hashes
+    private static final byte NULL = 0;
+
+    private static final byte RAW_HASH = 1;
+
+    private static final byte TEXT = 2;
+
+    // fewest bytes an encoded input, output and transaction can take, every
+    // field takes at least a byte
+    private static final int MIN_INPUT_LENGTH = 1;
+
+    private static final int MIN_OUTPUT_LENGTH = 3;
+
+    private static final int MIN_TRANSACTION_LENGTH = 8;
+
+    private static final ThreadLocal<ByteBuffer> BUFFER =
+            ThreadLocal.withInitial(
+                    () -> ByteBuffer.allocate(INITIAL_BUFFER_SIZE));
+
+    private static final ECNamedCurveParameterSpec CURVE =
+            ECNamedCurveTable.getParameterSpec(Wallet.CURVE);
+
+    // decoded public keys by compressed point, a chain has few distinct keys
+    private static final Map<ByteBuffer, PublicKey> KEYS =
+            new ConcurrentHashMap<>();
+
+    private BlockCodec() {
+    }
+
+    /**
+     * Encodes a block into a new byte array.
+     *
+     * @param block block to be encoded
+     * @return the encoded block
+     */
+    public static byte[] encode(Block block) {
+        return toArray(encodeInBuffer(out -> encode(block, out)));
+    }
+
+    /**
+     * Encodes the canonical preimage of a transaction, the bytes covered by
+     * its signature and hashed into its id. It holds the address of the
+     * sender, the ids of the spent outputs and the owner address and value of
+     * every output the transaction creates: the payment to the recipient
+     * followed by the change to the sender, if there is any.
+     *
+     * @param transaction transaction to be encoded
+     * @return the preimage
+     */
+    static byte[] encodePreimage(Transaction transaction) {
+        return toArray(encodeInBuffer(out -> {
+            out.put(VERSION);
+            out.put(transaction.getSenderAddress().toBytes());
+
+            List<TransactionInput> inputs = transaction.getInputs();
+            writeVarint(out, inputs.size());
+            for (TransactionInput input : inputs) {
+                writeHash(out, input.getTransactionOutputId());
+            }
+
+            boolean hasChange = transaction.getChange() != 0;
+            writeVarint(out, hasChange ? 2 : 1);
+            out.put(transaction.getRecipientAddress().toBytes());
+            writeVarlong(out, transaction.getValue());
+            if (hasChange) {
+                out.put(transaction.getSenderAddress().toBytes());
+                writeVarlong(out, transaction.getChange());
+            }
+        }));
+    }
+
+    /**
+     * Returns the number of bytes a transaction is encoded into.
+     *
+     * @param transaction transaction to be measured
+     * @return the encoded length, including the version
+     */
+    public static int getEncodedLength(Transaction transaction) {
+        return encodeInBuffer(out -> encode(transaction, out)).position();
+    }
+
+    private static byte[] toArray(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.position()];
+        buffer.flip();
+        buffer.get(bytes);
+
+        return bytes;
+    }
+
+    /**
+     * Encodes into the buffer of the current thread, which grows until the
+     * encoded data fits.
+     *
+     * @param encoder writes the encoded data into a buffer
+     * @return the buffer positioned after the encoded data
+     */
+    private static ByteBuffer encodeInBuffer(Consumer<ByteBuffer> encoder) {
+        while (true) {
+            ByteBuffer buffer = BUFFER.get();
+            buffer.clear();
+            try {
+                encoder.accept(buffer);
+                return buffer;
+            } catch (BufferOverflowException e) {
+                BUFFER.set(ByteBuffer.allocate(buffer.capacity() * 2));
+            }
+        }
+    }
+
+    /**
+     * Encodes a block at the current position of a buffer.
+     *
+     * @param block block to be encoded
+     * @param out   the buffer, its position is moved past the block
+     * @throws BufferOverflowException if the buffer is too small
+     */
+    public static void encode(Block block, ByteBuffer out) {
+        out.put(VERSION);
+        writeHash(out, block.getHash());
+        writeHash(out, block.getPreviousHash());
+        out.putLong(block.getTimeStamp());
+        writeVarint(out, block.getNonce());
+        writeHash(out, block.getMerkleRoot());
+
+        List<Transaction> transactions = block.getTransactions();
+        writeVarint(out, transactions.size());
+        for (Transaction transaction : transactions) {
+            writeTransaction(out, transaction);
+        }
+    }
+
+    /**
+     * Decodes a block at the current position of a buffer.
+     *
+     * @param in the buffer, its position is moved past the block
+     * @return the decoded block
+     * @throws IllegalArgumentException if the block has an unknown version
+     *                                  or is malformed
+     */
+    public static Block decode(ByteBuffer in) {
+        try {
+            checkVersion(in);
+            String hash = readHash(in);
+            String previousHash = readHash(in);
+            long timeStamp = in.getLong();
+            int nonce = readVarint(in);
+            String merkleRoot = readHash(in);
+
+            int count = readCount(in, MIN_TRANSACTION_LENGTH);
+            List<Transaction> transactions = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                transactions.add(readTransaction(in));
+            }
+
+            return new Block(hash, previousHash, timeStamp, nonce, merkleRoot,
+                    transactions);
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Truncated block", e);
+        }
+    }
+
+    /**
+     * Encodes a transaction at the current position of a buffer.
+     *
+     * @param transaction transaction to be encoded
+     * @param out         the buffer, its position is moved past the
+     *                    transaction
+     * @throws BufferOverflowException if the buffer is too small
+     */
+    public static void encode(Transaction transaction, ByteBuffer out) {
+        out.put(VERSION);
+        writeTransaction(out, transaction);
+    }
+
+    /**
+     * Decodes a transaction at the current position of a buffer.
+     *
+     * @param in the buffer, its position is moved past the transaction
+     * @return the decoded transaction
+     * @throws IllegalArgumentException if the transaction has an unknown
+     *                                  version or is malformed
+     */
+    public static Transaction decodeTransaction(ByteBuffer in) {
+        try {
+            checkVersion(in);
+            return readTransaction(in);
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Truncated transaction", e);
+        }
+    }
+
+    /**
+     * Encodes a transaction output at the current position of a buffer,
+     * without the format version, e.g., as part of a snapshot of the unspent
+     * transaction outputs which has its own header. The output id isn't
+     * written, it's derived from the other fields when the output is decoded.
+     *
+     * @param output output to be encoded
+     * @param out    the buffer, its position is moved past the output
+     * @throws BufferOverflowException if the buffer is too small
+     */
+    public static void encode(TransactionOutput output, ByteBuffer out) {
+        writeKey(out, output.getRecipient());
+        writeVarlong(out, output.getValue());
+        writeHash(out, output.getParentTransactionId());
+    }
+
+    /**
+     * Decodes a transaction output written by
+     * {@code encode(TransactionOutput, ByteBuffer)}.
+     *
+     * @param in the buffer, its position is moved past the output
+     * @return the decoded output
+     * @throws IllegalArgumentException if the output is malformed
+     */
+    public static TransactionOutput decodeOutput(ByteBuffer in) {
+        try {
+            PublicKey owner = readKey(in);
+            long value = readVarlong(in);
+
+            return new TransactionOutput(owner, value, readHash(in));
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Truncated output", e);
+        }
+    }
+
+    private static void writeTransaction(ByteBuffer out,
+            Transaction transaction) {
+        writeHash(out, transaction.getTransactionId());
+        writeKey(out, transaction.getSender());
+        writeKey(out, transaction.getRecipient());
+        writeVarlong(out, transaction.getValue());
+        writeVarlong(out, transaction.getChange());
+        writeBytes(out, transaction.getSignature());
+
+        List<TransactionInput> inputs = transaction.getInputs();
+        writeVarint(out, inputs.size());
+        for (TransactionInput input : inputs) {
+            writeHash(out, input.getTransactionOutputId());
+        }
+
+        List<TransactionOutput> outputs = transaction.getOutputs();
+        writeVarint(out, outputs.size());
+        for (TransactionOutput output : outputs) {
+            encode(output, out);
+        }
+    }
+
+    private static Transaction readTransaction(ByteBuffer in) {
+        String transactionId = readHash(in);
+        PublicKey sender = readKey(in);
+        PublicKey recipient = readKey(in);
+        long value = readVarlong(in);
+        long change = readVarlong(in);
+        byte[] signature = readBytes(in);
+
+        int inputCount = readCount(in, MIN_INPUT_LENGTH);
+        List<TransactionInput> inputs = new ArrayList<>(inputCount);
+        for (int i = 0; i < inputCount; i++) {
+            inputs.add(new TransactionInput(readHash(in)));
+        }
+
+        int outputCount = readCount(in, MIN_OUTPUT_LENGTH);
+        List<TransactionOutput> outputs = new ArrayList<>(outputCount);
+        for (int i = 0; i < outputCount; i++) {
+            outputs.add(decodeOutput(in));
+        }
+
+        return new Transaction(transactionId, sender, recipient, value,
+                change, signature, inputs, outputs);
+    }
+
+    /**
+     * Reads the number of elements which follow. It's checked against the
+     * bytes left in the buffer before anything is allocated for them, so a
+     * malformed count can't exhaust the heap.
+     *
+     * @param in            the buffer
+     * @param elementLength fewest bytes an element can be encoded into
+     */
+    private static int readCount(ByteBuffer in, int elementLength) {
+        int count = readVarint(in);
+        if (count < 0 || (long) count * elementLength > in.remaining()) {
+            throw new IllegalArgumentException("Count " + count
+                    + " exceeds the " + in.remaining() + " remaining bytes");
+        }
+
+        return count;
+    }
+
+    private static void checkVersion(ByteBuffer in) {
+        byte version = in.get();
+        if (version != VERSION) {
+            throw new IllegalArgumentException(
+                    "Unsupported codec version: " + version);
+        }
+    }
+
+    /**
+     * Writes an unsigned varint, 7 bits per byte with the high bit set on
+     * every byte but the last one.
+     */
+    private static void writeVarint(ByteBuffer out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.put((byte) value);
+    }
+
+    private static int readVarint(ByteBuffer in) {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            byte b = in.get();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+
+        throw new IllegalArgumentException("Malformed varint");
+    }
+
+    private static void writeVarlong(ByteBuffer out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.put((byte) value);
+    }
+
+    private static long readVarlong(ByteBuffer in) {
+        long value = 0;
+        for (int shift = 0; shift < 70; shift += 7) {
+            byte b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+
+        throw new IllegalArgumentException("Malformed varint");
+    }
+
+    private static void writeBytes(ByteBuffer out, byte[] bytes) {
+        // a length of 0 means null
+        writeVarint(out, bytes == null ? 0 : bytes.length + 1);
+        if (bytes != null) {
+            out.put(bytes);
+        }
+    }
+
+    private static byte[] readBytes(ByteBuffer in) {
+        int length = readVarint(in) - 1;
+        if (length == -1) {
+            return null;
+        }
+        if (length < 0 || length > in.remaining()) {
+            throw new IllegalArgumentException("Length " + length
+                    + " exceeds the " + in.remaining() + " remaining bytes");
+        }
+
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+
+        return bytes;
+    }
+
+    /**
+     * Writes a hash as raw bytes. Anything which isn't a SHA-256 hex string,
+     * e.g., the previous hash "0" of the genesis block, is written as text.
+     */
+    private static void writeHash(ByteBuffer out, String hash) {
+        if (hash == null) {
+            out.put(NULL);
+        } else if (isHash(hash)) {
+            out.put(RAW_HASH);
+            out.put(StringUtil.toBytes(hash));
+        } else {
+            out.put(TEXT);
+            writeBytes(out, hash.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private static String readHash(ByteBuffer in) {
+        byte tag = in.get();
+        switch (tag) {
+            case NULL:
+                return null;
+            case RAW_HASH:
+                byte[] hash = new byte[Sha256.HASH_LENGTH];
+                in.get(hash);
+                return StringUtil.toString(hash);
+            case TEXT:
+                return new String(readBytes(in), StandardCharsets.UTF_8);
+            default:
+                throw new IllegalArgumentException("Unknown hash tag: " + tag);
+        }
+    }
+
+    static boolean isHash(String hash) {
+        if (hash.length() != Sha256.HASH_LENGTH * 2) {
+            return false;
+        }
+
+        // only lower case digits survive the round trip
+        for (int i = 0; i < hash.length(); i++) {
+            char c = hash.charAt(i);
+            if ((c < '0' || c > '9') && (c < 'a' || c > 'f')) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static void writeKey(ByteBuffer out, PublicKey key) {
+        if (key == null) {
+            writeBytes(out, null);
+        } else if (key instanceof ECPublicKey) {
+            writeBytes(out, ((ECPublicKey) key).getQ().getEncoded(true));
+        } else {
+            throw new IllegalArgumentException(
+                    "Unsupported key: " + key.getAlgorithm());
+        }
+    }
+
+    private static PublicKey readKey(ByteBuffer in) {
+        byte[] point = readBytes(in);
+        if (point == null) {
+            return null;
+        }
+
+        ByteBuffer cacheKey = ByteBuffer.wrap(point);
+        PublicKey key = KEYS.get(cacheKey);
+        if (key == null) {
+            key = decodeKey(point);
+            if (KEYS.size() >= MAX_CACHED_KEYS) {
+                KEYS.clear();
+            }
+            KEYS.put(cacheKey, key);
+        }
+
+        return key;
+    }
+
+    private static PublicKey decodeKey(byte[] point) {
+        try {
+            KeyFactory factory = KeyFactory.getInstance("ECDSA", "BC");
+            PublicKey key = factory.generatePublic(new ECPublicKeySpec(
+                    CURVE.getCurve().decodePoint(point), CURVE));
+
+            // a key made from a curve spec is equal to, but doesn't have
+            // the hash code of, the wallet's key, while a key made from its
+            // X.509 encoding has both
+            return factory.generatePublic(
+                    new X509EncodedKeySpec(key.getEncoded()));
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.basaki.noobchain;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import lombok.Getter;
+
+/**
+ * {@code BlockCommitEvent} describes a block added to or removed from the
+ * chain by the unspent transaction outputs it created and spent. The
+ * outputs are also grouped by owner, so a listener interested in a single
+ * address finds its outputs without going through the whole block.
+ */
+public class BlockCommitEvent {
+
+    @Getter
+    private final Block block;
+
+    // height of the block in the chain, the genesis block is 0
+    @Getter
+    private final int height;
+
+    private final List<TransactionOutput> created = new ArrayList<>();
+
+    private final List<TransactionOutput> spent = new ArrayList<>();
+
+    private final Map<Address, List<TransactionOutput>> createdByOwner =
+            new HashMap<>();
+
+    private final Map<Address, List<TransactionOutput>> spentByOwner =
+            new HashMap<>();
+
+    /**
+     * Creates the event of a block.
+     *
+     * @param block  the added or removed block
+     * @param height height of the block in the chain
+     * @param spent  the outputs spent by the block
+     */
+    BlockCommitEvent(Block block, int height, List<TransactionOutput> spent) {
+        this.block = block;
+        this.height = height;
+
+        for (TransactionOutput output : spent) {
+            this.spent.add(output);
+            group(spentByOwner, output);
+        }
+
+        for (Transaction transaction : block.getTransactions()) {
+            for (TransactionOutput output : transaction.getOutputs()) {
+                created.add(output);
+                group(createdByOwner, output);
+            }
+        }
+    }
+
+    public List<TransactionOutput> getCreated() {
+        return Collections.unmodifiableList(created);
+    }
+
+    public List<TransactionOutput> getSpent() {
+        return Collections.unmodifiableList(spent);
+    }
+
+    /**
+     * Returns the outputs created by the block for an owner.
+     *
+     * @param owner address of the owner
+     * @return the created outputs, empty if there are none
+     */
+    public List<TransactionOutput> getCreated(Address owner) {
+        return Collections.unmodifiableList(
+                createdByOwner.getOrDefault(owner, Collections.emptyList()));
+    }
+
+    /**
+     * Returns the outputs of an owner spent by the block.
+     *
+     * @param owner address of the owner
+     * @return the spent outputs, empty if there are none
+     */
+    public List<TransactionOutput> getSpent(Address owner) {
+        return Collections.unmodifiableList(
+                spentByOwner.getOrDefault(owner, Collections.emptyList()));
+    }
+
+    private static void group(Map<Address, List<TransactionOutput>> groups,
+            TransactionOutput output) {
+        groups.computeIfAbsent(output.getOwner(), k -> new ArrayList<>())
+                .add(output);
+    }
+}
@@ -0,0 +1,31 @@
+package com.basaki.noobchain;
+
+/**
+ * {@code BlockListener} is notified of every block added to a
+ * {@code NoobChain} and of every block taken off it when the chain switches
+ * to a heavier branch. Listeners are called in the order the blocks are
+ * added or removed, by the thread changing the chain, so they should return
+ * quickly.
+ */
+@FunctionalInterface
+public interface BlockListener {
+
+    /**
+     * Called after a block has been added to the chain and its transactions
+     * have been applied to the unspent transaction outputs.
+     *
+     * @param event the added block with the outputs it created and spent
+     */
+    void blockCommitted(BlockCommitEvent event);
+
+    /**
+     * Called after a block has been taken off the chain and its transactions
+     * have been reverted. Blocks are disconnected from the tip down, so the
+     * outputs the block created are unspent again when it's reverted.
+     *
+     * @param event the removed block with the outputs it had created and
+     *              spent
+     */
+    default void blockDisconnected(BlockCommitEvent event) {
+    }
+}
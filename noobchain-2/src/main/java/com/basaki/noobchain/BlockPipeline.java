@@ -0,0 +1,335 @@
+package com.basaki.noobchain;
+
+import java.io.Closeable;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * {@code BlockPipeline} produces blocks in stages which run concurrently,
+ * each one on its own executor:
+ * <ol>
+ * <li>the signatures of submitted transactions are verified in
+ * parallel,</li>
+ * <li>the verified transactions are admitted to the mempool, i.e., checked
+ * against the unspent transaction outputs and the other pending
+ * transactions,</li>
+ * <li>the next block's transactions are drained from the mempool,</li>
+ * <li>the block is mined and added to the chain,</li>
+ * <li>the callers waiting for the transactions of the block are
+ * completed.</li>
+ * </ol>
+ * Transactions keep being verified and admitted while a block is mined, and
+ * the transactions of the next block are drained while the current one is
+ * mined. The stages are connected by bounded queues. When a queue is full,
+ * the stage feeding it waits, down to the callers submitting transactions.
+ */
+@Slf4j
+@SuppressWarnings({"squid:S00112"})
+public class BlockPipeline implements Closeable {
+
+    public static final int DEFAULT_QUEUE_CAPACITY = 10_000;
+
+    // how long the assembly stage waits for transactions before looking again
+    private static final long IDLE_WAIT_MILLIS = 100;
+
+    private final Mempool mempool;
+
+    private final BlockAssembler assembler;
+
+    private final SignatureVerifier verifier;
+
+    private final ThreadPoolExecutor verification;
+
+    private final ThreadPoolExecutor admission;
+
+    private final ExecutorService assembly;
+
+    private final ExecutorService mining;
+
+    private final ExecutorService commit;
+
+    // drained transactions waiting to be mined
+    private final BlockingQueue<List<Transaction>> batches =
+            new ArrayBlockingQueue<>(1);
+
+    // callers waiting for their admitted transactions
+    private final Map<Transaction, CompletableFuture<Block>> waiting =
+            new ConcurrentHashMap<>();
+
+    // every future which hasn't been completed yet
+    private final Set<CompletableFuture<Block>> inFlight =
+            ConcurrentHashMap.newKeySet();
+
+    private final Object admitted = new Object();
+
+    private volatile boolean running = true;
+
+    /**
+     * Creates a pipeline with the default block limits and queue capacity.
+     *
+     * @param chain   chain the blocks are added to, it must already have its
+     *                genesis block
+     * @param mempool the pending transactions of the chain
+     */
+    public BlockPipeline(NoobChain chain, Mempool mempool) {
+        this(new BlockAssembler(chain, mempool), mempool,
+                SignatureVerifier.getDefault(),
+                Runtime.getRuntime().availableProcessors(),
+                DEFAULT_QUEUE_CAPACITY);
+    }
+
+    /**
+     * Creates a pipeline.
+     *
+     * @param assembler           assembles and mines the blocks
+     * @param mempool             the mempool the assembler drains
+     * @param verifier            verifier of the transaction signatures
+     * @param verificationThreads number of threads verifying signatures
+     * @param queueCapacity       maximum number of transactions waiting for
+     *                            verification or admission
+     */
+    public BlockPipeline(BlockAssembler assembler, Mempool mempool,
+            SignatureVerifier verifier, int verificationThreads,
+            int queueCapacity) {
+        this.assembler = assembler;
+        this.mempool = mempool;
+        this.verifier = verifier;
+
+        verification = newStage("verification", verificationThreads,
+                queueCapacity);
+        admission = newStage("admission", 1, queueCapacity);
+        assembly = Executors.newSingleThreadExecutor(
+                threadFactory("assembly"));
+        mining = Executors.newSingleThreadExecutor(threadFactory("mining"));
+        commit = Executors.newSingleThreadExecutor(threadFactory("commit"));
+
+        assembly.execute(this::assemble);
+        mining.execute(this::mine);
+    }
+
+    /**
+     * Submits a transaction. The caller waits if the pipeline is full.
+     *
+     * @param transaction a signed transaction
+     * @return a future completed with the block which includes the
+     * transaction, or completed exceptionally if the transaction is rejected
+     */
+    public CompletableFuture<Block> submit(Transaction transaction) {
+        CompletableFuture<Block> future = new CompletableFuture<>();
+        if (transaction == null) {
+            future.completeExceptionally(
+                    new IllegalArgumentException("No transaction"));
+            return future;
+        }
+
+        inFlight.add(future);
+        future.whenComplete((block, e) -> inFlight.remove(future));
+        try {
+            verification.execute(() -> verify(transaction, future));
+        } catch (RejectedExecutionException e) {
+            future.completeExceptionally(e);
+        }
+
+        return future;
+    }
+
+    /**
+     * Stops the pipeline. A block being mined is finished, while the callers
+     * of the transactions which haven't been added to a block yet are
+     * cancelled. The admitted transactions stay in the mempool, the ones
+     * drained for the next block are put back.
+     */
+    @Override
+    public void close() {
+        running = false;
+        verification.shutdownNow();
+        admission.shutdownNow();
+        assembly.shutdownNow();
+        mining.shutdown();
+        try {
+            // a batch is put into the queue until the assembly stage stops
+            assembly.awaitTermination(1, TimeUnit.MINUTES);
+            mining.awaitTermination(1, TimeUnit.MINUTES);
+            commit.shutdown();
+            commit.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        for (List<Transaction> batch = batches.poll(); batch != null;
+                batch = batches.poll()) {
+            mempool.restore(batch);
+        }
+        waiting.clear();
+        for (CompletableFuture<Block> future : inFlight) {
+            future.completeExceptionally(
+                    new CancellationException("Pipeline closed"));
+        }
+    }
+
+    private void verify(Transaction transaction,
+            CompletableFuture<Block> future) {
+        try {
+            if (!verifier.verify(transaction)) {
+                future.completeExceptionally(new IllegalArgumentException(
+                        "Transaction signature is invalid"));
+                return;
+            }
+        } catch (RuntimeException e) {
+            // the worker stays alive and the caller learns why
+            future.completeExceptionally(e);
+            return;
+        }
+
+        try {
+            admission.execute(() -> admit(transaction, future));
+        } catch (RejectedExecutionException e) {
+            future.completeExceptionally(e);
+        }
+    }
+
+    private void admit(Transaction transaction,
+            CompletableFuture<Block> future) {
+        // registered first, the transaction may be mined right after it's
+        // admitted
+        waiting.put(transaction, future);
+        boolean accepted;
+        try {
+            accepted = mempool.submit(transaction);
+        } catch (RuntimeException e) {
+            waiting.remove(transaction);
+            future.completeExceptionally(e);
+            return;
+        }
+        if (!accepted) {
+            waiting.remove(transaction);
+            future.completeExceptionally(new IllegalArgumentException(
+                    "Transaction rejected by the mempool"));
+            return;
+        }
+
+        synchronized (admitted) {
+            admitted.notifyAll();
+        }
+    }
+
+    private void assemble() {
+        while (running) {
+            List<Transaction> batch = assembler.drain();
+            try {
+                if (batch.isEmpty()) {
+                    synchronized (admitted) {
+                        admitted.wait(IDLE_WAIT_MILLIS);
+                    }
+                } else {
+                    batches.put(batch);
+                }
+            } catch (InterruptedException e) {
+                mempool.restore(batch);
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private void mine() {
+        while (running) {
+            List<Transaction> batch;
+            try {
+                batch = batches.poll(IDLE_WAIT_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+
+            if (batch != null) {
+                try {
+                    Block block = assembler.mine(batch);
+                    commit.execute(() -> complete(batch, block));
+                } catch (RuntimeException e) {
+                    log.error("Failed to mine a block", e);
+                    commit.execute(() -> fail(batch, e));
+                }
+            }
+        }
+    }
+
+    private void complete(List<Transaction> batch, Block block) {
+        Set<Transaction> included =
+                Collections.newSetFromMap(new IdentityHashMap<>());
+        included.addAll(block.getTransactions());
+
+        for (Transaction transaction : batch) {
+            CompletableFuture<Block> future = waiting.remove(transaction);
+            if (future == null) {
+                continue;
+            }
+
+            if (included.contains(transaction)) {
+                future.complete(block);
+            } else {
+                future.completeExceptionally(new IllegalArgumentException(
+                        "Transaction discarded while processing the block"));
+            }
+        }
+    }
+
+    private void fail(List<Transaction> batch, Exception cause) {
+        for (Transaction transaction : batch) {
+            CompletableFuture<Block> future = waiting.remove(transaction);
+            if (future != null) {
+                future.completeExceptionally(cause);
+            }
+        }
+    }
+
+    /**
+     * Creates the executor of a stage with a bounded queue. A task submitted
+     * to a full queue waits for room instead of being rejected.
+     */
+    private static ThreadPoolExecutor newStage(String name, int threads,
+            int capacity) {
+        RejectedExecutionHandler waitForRoom = (task, executor) -> {
+            if (executor.isShutdown()) {
+                throw new RejectedExecutionException("Pipeline closed");
+            }
+            try {
+                executor.getQueue().put(task);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RejectedExecutionException(e);
+            }
+        };
+
+        return new ThreadPoolExecutor(threads, threads, 0,
+                TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(capacity),
+                threadFactory(name), waitForRoom);
+    }
+
+    private static ThreadFactory threadFactory(String name) {
+        AtomicInteger count = new AtomicInteger();
+        return task -> {
+            Thread thread = new Thread(task,
+                    "pipeline-" + name + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
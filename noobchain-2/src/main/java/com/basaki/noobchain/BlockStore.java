@@ -0,0 +1,421 @@
+package com.basaki.noobchain;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * {@code BlockStore} persists the blocks of a chain in an append-only log
+ * split into segment files. Blocks are written through a {@code FileChannel}
+ * at the end of the newest segment and read back from memory-mapped
+ * segments.
+ * <p>
+ * Every block is stored as a record with the layout
+ * <pre>
+ * [int payload length][int CRC32][32 byte block hash][payload]
+ * </pre>
+ * where the payload is the block encoded by {@code BlockCodec} and the
+ * checksum covers the hash and the payload. The position of every
+ * record is kept in an index by block height and by block hash, which is
+ * rebuilt by scanning the segments when the store is opened. A record torn
+ * by a crash at the end of the newest segment is cut off. A damaged record
+ * anywhere else fails the open and the files are left as they are, as the
+ * blocks after it couldn't be linked to the chain.
+ */
+@Slf4j
+public class BlockStore implements Closeable {
+
+    public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+
+    private static final int HEADER_LENGTH = 8 + Sha256.HASH_LENGTH;
+
+    private static final String SEGMENT_PREFIX = "blocks-";
+
+    private static final String SEGMENT_SUFFIX = ".dat";
+
+    private final Path directory;
+
+    private final int segmentSize;
+
+    private final List<Segment> segments = new ArrayList<>();
+
+    // position of every record by block height, see position(int, long)
+    private long[] positions = new long[1024];
+
+    private int size;
+
+    private final Map<String, Integer> heights = new HashMap<>();
+
+    /**
+     * Opens a store with the default segment size.
+     *
+     * @param directory directory of the segment files, created if missing
+     */
+    public BlockStore(Path directory) {
+        this(directory, DEFAULT_SEGMENT_SIZE);
+    }
+
+    /**
+     * Opens a store. The blocks already in the directory are indexed.
+     *
+     * @param directory   directory of the segment files, created if missing
+     * @param segmentSize size after which a new segment file is started
+     * @throws UncheckedIOException if the files can't be read or a block
+     *                              before the end of the log is damaged
+     */
+    public BlockStore(Path directory, int segmentSize) {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+
+        try {
+            Files.createDirectories(directory);
+            List<Path> paths = listSegments();
+            for (int i = 0; i < paths.size(); i++) {
+                Segment segment = new Segment(segments.size(), paths.get(i));
+                segments.add(segment);
+                scan(segment, i == paths.size() - 1);
+            }
+        } catch (IOException e) {
+            close();
+            throw new UncheckedIOException(e);
+        }
+
+        log.info("Opened block store {} with {} blocks in {} segments",
+                directory, size, segments.size());
+    }
+
+    /**
+     * Appends a block at the end of the log.
+     *
+     * @param block block to be stored, it must be mined
+     * @return the height of the stored block
+     */
+    public synchronized int append(Block block) {
+        byte[] payload = BlockCodec.encode(block);
+        byte[] hash = StringUtil.toBytes(block.getHash());
+
+        ByteBuffer record = ByteBuffer.allocate(HEADER_LENGTH + payload.length);
+        record.putInt(payload.length);
+        record.putInt(checksum(hash, payload));
+        record.put(hash);
+        record.put(payload);
+        record.flip();
+
+        try {
+            Segment segment = segments.isEmpty() ? null
+                    : segments.get(segments.size() - 1);
+            if (segment == null || (segment.length > 0
+                    && segment.length + record.limit() > segmentSize)) {
+                segment = new Segment(segments.size(), directory.resolve(
+                        String.format("%s%06d%s", SEGMENT_PREFIX,
+                                segments.size(), SEGMENT_SUFFIX)));
+                segments.add(segment);
+            }
+
+            long offset = segment.length;
+            while (record.hasRemaining()) {
+                segment.channel.write(record, offset + record.position());
+            }
+            segment.length += record.limit();
+
+            index(block.getHash(), position(segment.number, offset));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        return size - 1;
+    }
+
+    /**
+     * Removes the blocks from a height onwards, e.g., the blocks of a branch
+     * which is no longer part of the chain. The segments after the one
+     * holding the first removed block are deleted.
+     *
+     * @param height height of the first block to be removed
+     */
+    public synchronized void truncate(int height) {
+        if (height < 0 || height > size) {
+            throw new IndexOutOfBoundsException("Height: " + height
+                    + ", Size: " + size);
+        }
+        if (height == size) {
+            return;
+        }
+
+        try {
+            for (int h = height; h < size; h++) {
+                heights.remove(hashAt(positions[h]));
+            }
+
+            int number = (int) (positions[height] >>> 32);
+            while (segments.size() > number + 1) {
+                Segment last = segments.remove(segments.size() - 1);
+                last.channel.close();
+                Files.delete(last.path);
+            }
+
+            Segment segment = segments.get(number);
+            long offset = positions[height] & 0xFFFFFFFFL;
+            segment.channel.truncate(offset);
+            segment.length = offset;
+            segment.mapped = null;
+            size = height;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Reads the block at a given height.
+     *
+     * @param height height of the block, the genesis block is at 0
+     * @return the block
+     */
+    public Block read(int height) {
+        byte[] payload;
+        synchronized (this) {
+            if (height < 0 || height >= size) {
+                throw new IndexOutOfBoundsException("Height: " + height
+                        + ", Size: " + size);
+            }
+
+            // copied while the record can't be truncated, decoded outside
+            long position = positions[height];
+            ByteBuffer record = segments.get((int) (position >>> 32))
+                    .payload((int) position);
+            payload = new byte[record.remaining()];
+            record.get(payload);
+        }
+
+        return BlockCodec.decode(ByteBuffer.wrap(payload));
+    }
+
+    /**
+     * Reads a block by its hash.
+     *
+     * @param hash hash of the block
+     * @return the block or null if the store doesn't contain it
+     */
+    public Block read(String hash) {
+        int height = getHeight(hash);
+        return height < 0 ? null : read(height);
+    }
+
+    /**
+     * Returns the hash of the block at a given height without reading the
+     * block.
+     *
+     * @param height height of the block, the genesis block is at 0
+     * @return the hash of the block
+     */
+    public synchronized String getHash(int height) {
+        if (height < 0 || height >= size) {
+            throw new IndexOutOfBoundsException("Height: " + height
+                    + ", Size: " + size);
+        }
+
+        try {
+            return hashAt(positions[height]);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Looks up the height of a block without reading it.
+     *
+     * @param hash hash of the block
+     * @return the height of the block or -1 if the store doesn't contain it
+     */
+    public synchronized int getHeight(String hash) {
+        Integer height = heights.get(hash);
+        return height == null ? -1 : height;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Forces the appended blocks to the storage device.
+     */
+    public synchronized void flush() {
+        try {
+            if (!segments.isEmpty()) {
+                segments.get(segments.size() - 1).channel.force(false);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        for (Segment segment : segments) {
+            try {
+                segment.channel.close();
+            } catch (IOException e) {
+                log.warn("Failed to close segment {}", segment.path, e);
+            }
+        }
+        segments.clear();
+    }
+
+    private List<Path> listSegments() throws IOException {
+        List<Path> paths = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory,
+                SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            stream.forEach(paths::add);
+        }
+        paths.sort(null);
+
+        return paths;
+    }
+
+    /**
+     * Indexes the records of a segment. A record which is incomplete or
+     * fails its checksum at the end of the newest segment has been torn by
+     * a crash, the segment is truncated before it.
+     *
+     * @param segment segment to be scanned
+     * @param newest  true if it's the last segment of the log
+     * @throws IOException if a record before the end of the log is damaged
+     */
+    private void scan(Segment segment, boolean newest) throws IOException {
+        MappedByteBuffer buffer = segment.map();
+        byte[] hash = new byte[Sha256.HASH_LENGTH];
+
+        long offset = 0;
+        while (offset < segment.length) {
+            int length = offset + HEADER_LENGTH <= segment.length
+                    ? buffer.getInt((int) offset) : -1;
+            long end = offset + HEADER_LENGTH + length;
+            boolean intact = length >= 0 && end <= segment.length;
+            if (intact) {
+                ByteBuffer record = buffer.duplicate();
+                record.position((int) offset + 8);
+                record.get(hash);
+                byte[] payload = new byte[length];
+                record.get(payload);
+                intact = checksum(hash, payload)
+                        == buffer.getInt((int) offset + 4);
+            }
+
+            if (!intact) {
+                boolean torn = newest
+                        && (length < 0 || end >= segment.length);
+                if (!torn) {
+                    throw new IOException("Damaged block at " + offset
+                            + " of " + segment.path);
+                }
+
+                log.warn("Truncating {} at {} after an incomplete block",
+                        segment.path, offset);
+                segment.channel.truncate(offset);
+                segment.length = offset;
+                segment.mapped = null;
+                return;
+            }
+
+            index(StringUtil.toString(hash), position(segment.number, offset));
+            offset = end;
+        }
+    }
+
+    private void index(String hash, long position) {
+        if (size == positions.length) {
+            positions = Arrays.copyOf(positions, size * 2);
+        }
+        positions[size] = position;
+        heights.put(hash, size);
+        size++;
+    }
+
+    private String hashAt(long position) throws IOException {
+        ByteBuffer record = segments.get((int) (position >>> 32)).map()
+                .duplicate();
+        record.position((int) position + 8);
+        byte[] hash = new byte[Sha256.HASH_LENGTH];
+        record.get(hash);
+
+        return StringUtil.toString(hash);
+    }
+
+    private static long position(int segment, long offset) {
+        return ((long) segment << 32) | offset;
+    }
+
+    private static int checksum(byte[] hash, byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(hash);
+        crc.update(payload);
+        return (int) crc.getValue();
+    }
+
+
+    /**
+     * {@code Segment} is one file of the log. The file is mapped read-only
+     * and mapped again once records are appended past the mapped region.
+     */
+    private static class Segment {
+
+        private final int number;
+
+        private final Path path;
+
+        private final FileChannel channel;
+
+        private long length;
+
+        private MappedByteBuffer mapped;
+
+        Segment(int number, Path path) throws IOException {
+            this.number = number;
+            this.path = path;
+            this.channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+            this.length = channel.size();
+        }
+
+        MappedByteBuffer map() throws IOException {
+            if (mapped == null || mapped.capacity() < length) {
+                mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+            }
+
+            return mapped;
+        }
+
+        /**
+         * Returns the payload of a record.
+         *
+         * @param offset offset of the record in the segment
+         * @return a buffer positioned at the payload and limited to it
+         */
+        ByteBuffer payload(int offset) {
+            try {
+                ByteBuffer buffer = map().duplicate();
+                int length = buffer.getInt(offset);
+                buffer.limit(offset + HEADER_LENGTH + length);
+                buffer.position(offset + HEADER_LENGTH);
+
+                return buffer;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.basaki.noobchain;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * {@code BlockUndo} records how a block changed the unspent transaction
+ * outputs: the outputs every transaction spent and the ids of the outputs it
+ * created. With the record, a block is taken off the chain by restoring the
+ * outputs it spent, without replaying the chain from the genesis block.
+ */
+class BlockUndo {
+
+    // ids of the outputs created by each transaction, in block order
+    private final List<List<String>> created = new ArrayList<>();
+
+    // outputs spent by each transaction, in block order
+    private final List<List<TransactionOutput>> spent = new ArrayList<>();
+
+    /**
+     * Creates the record of a block whose transactions have been processed,
+     * i.e., whose inputs refer to the outputs they spent.
+     *
+     * @param block a processed block
+     * @return the undo record of the block
+     */
+    static BlockUndo of(Block block) {
+        BlockUndo undo = new BlockUndo();
+        for (Transaction transaction : block.getTransactions()) {
+            List<TransactionOutput> outputs = new ArrayList<>();
+            for (TransactionInput input : transaction.getInputs()) {
+                if (input.getUnspentTxnOutput() != null) {
+                    outputs.add(input.getUnspentTxnOutput());
+                }
+            }
+            undo.add(transaction.getOutputs(), outputs);
+        }
+
+        return undo;
+    }
+
+    /**
+     * Records the next transaction of the block.
+     *
+     * @param outputs outputs created by the transaction
+     * @param inputs  outputs spent by the transaction
+     */
+    void add(List<TransactionOutput> outputs,
+            List<TransactionOutput> inputs) {
+        List<String> ids = new ArrayList<>(outputs.size());
+        for (TransactionOutput output : outputs) {
+            ids.add(output.getId());
+        }
+
+        created.add(ids);
+        spent.add(inputs);
+    }
+
+    /**
+     * Returns every output spent by the block.
+     *
+     * @return the spent outputs in block order
+     */
+    List<TransactionOutput> getSpent() {
+        List<TransactionOutput> outputs = new ArrayList<>();
+        for (List<TransactionOutput> inputs : spent) {
+            outputs.addAll(inputs);
+        }
+
+        return Collections.unmodifiableList(outputs);
+    }
+
+    /**
+     * Reverts the block, the last transaction first, and clears the record.
+     *
+     * @param utxos the unspent transaction outputs after the block
+     * @throws IllegalStateException if an output created by the block has
+     *                               been spent since
+     */
+    void undo(UtxoStore utxos) {
+        for (int i = created.size() - 1; i >= 0; i--) {
+            if (utxos.apply(created.get(i), spent.get(i)) == null) {
+                throw new IllegalStateException("Output created by the block "
+                        + "is no longer unspent");
+            }
+        }
+
+        created.clear();
+        spent.clear();
+    }
+}
@@ -0,0 +1,112 @@
+package com.basaki.noobchain;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NavigableSet;
+
+/**
+ * {@code BranchAndBoundSelector} searches for a set of outputs whose values
+ * add up to exactly the amount sent. The outputs are tried from the largest
+ * down, depth first, either spending or skipping each one. A branch is cut
+ * as soon as its total exceeds the amount or the outputs left can't make up
+ * the difference. The search is bounded by a maximum number of tries, after
+ * which the fallback selector is used.
+ */
+public class BranchAndBoundSelector implements CoinSelector {
+
+    public static final int DEFAULT_MAX_TRIES = 100_000;
+
+    private final int maxTries;
+
+    private final CoinSelector fallback;
+
+    /**
+     * Creates a selector.
+     *
+     * @param maxTries maximum number of search steps
+     * @param fallback selector used if there's no exact match
+     */
+    public BranchAndBoundSelector(int maxTries, CoinSelector fallback) {
+        this.maxTries = maxTries;
+        this.fallback = fallback;
+    }
+
+    @Override
+    public List<TransactionOutput> select(
+            NavigableSet<TransactionOutput> outputs, long value) {
+        // only the outputs not larger than the amount can be part of a match
+        TransactionOutput probe = new TransactionOutput("", null, value, null);
+        List<TransactionOutput> candidates =
+                new ArrayList<>(outputs.headSet(probe, false).descendingSet());
+        TransactionOutput exact = outputs.ceiling(probe);
+        if (exact != null && exact.getValue() == value) {
+            List<TransactionOutput> selected = new ArrayList<>();
+            selected.add(exact);
+            return selected;
+        }
+
+        int n = candidates.size();
+        long[] values = new long[n];
+        // remaining[i] is the sum of the values from i onwards
+        long[] remaining = new long[n + 1];
+        for (int i = n - 1; i >= 0; i--) {
+            values[i] = candidates.get(i).getValue();
+            remaining[i] = remaining[i + 1] + values[i];
+        }
+
+        boolean[] spent = new boolean[n];
+        if (search(values, remaining, spent, value)) {
+            List<TransactionOutput> selected = new ArrayList<>();
+            for (int i = 0; i < n; i++) {
+                if (spent[i]) {
+                    selected.add(candidates.get(i));
+                }
+            }
+            return selected;
+        }
+
+        return fallback.select(outputs, value);
+    }
+
+    /**
+     * Runs the depth first search without recursion. Every output is first
+     * spent and then, on the way back, skipped.
+     */
+    private boolean search(long[] values, long[] remaining,
+            boolean[] spent, long target) {
+        int n = values.length;
+        long total = 0;
+        int depth = 0;
+
+        for (int tries = 0; tries < maxTries; tries++) {
+            boolean backtrack;
+            if (total == target) {
+                return true;
+            } else if (depth == n || total > target
+                    || total + remaining[depth] < target) {
+                backtrack = true;
+            } else {
+                spent[depth] = true;
+                total += values[depth];
+                depth++;
+                backtrack = false;
+            }
+
+            if (backtrack) {
+                // step back to the last spent output and skip it instead
+                depth--;
+                while (depth >= 0 && !spent[depth]) {
+                    depth--;
+                }
+                if (depth < 0) {
+                    return false;
+                }
+                spent[depth] = false;
+                total -= values[depth];
+                depth++;
+            }
+        }
+
+        return false;
+    }
+}
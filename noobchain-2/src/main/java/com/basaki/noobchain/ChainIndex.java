@@ -0,0 +1,337 @@
+package com.basaki.noobchain;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import lombok.Getter;
+
+/**
+ * {@code ChainIndex} finds the blocks and transactions of a chain in
+ * constant time. Blocks are indexed by height and hash, transactions by id
+ * and the outputs by id, pointing to the transaction which created them.
+ * The index is updated as blocks are added to and taken off the chain and
+ * can be rebuilt from a block store. Lookups from any number of threads run
+ * in parallel and only wait while a block is being added or removed.
+ * <p>
+ * The blocks at the start of a chain loaded from a block store can be
+ * indexed by hash only. They're read from the store when they're looked up,
+ * and their transactions are indexed on the first transaction lookup.
+ */
+public class ChainIndex {
+
+    // the blocks by height, null for a block only kept in the store
+    private final List<Block> blocks = new ArrayList<>();
+
+    private final Map<String, Integer> heights = new HashMap<>();
+
+    private final Map<String, Location> transactions = new HashMap<>();
+
+    // id of the transaction which created an output, by output id
+    private final Map<String, String> outputs = new HashMap<>();
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // store of the blocks which are indexed by hash only, may be null
+    private final BlockStore store;
+
+    // number of blocks only kept in the store, they come before every other
+    // block
+    private volatile int storedBlocks;
+
+    // number of blocks only kept in the store whose transactions are indexed
+    private volatile int indexedStoredBlocks;
+
+    public ChainIndex() {
+        this(null);
+    }
+
+    /**
+     * Creates an index whose blocks may be kept in a block store.
+     *
+     * @param store store of the blocks, null if every block is added
+     */
+    public ChainIndex(BlockStore store) {
+        this.store = store;
+    }
+
+    /**
+     * Rebuilds the index of the blocks in a block store. The blocks are
+     * indexed by hash and only read when they're looked up.
+     *
+     * @param store store of the blocks
+     * @return the index of the stored blocks
+     */
+    public static ChainIndex rebuild(BlockStore store) {
+        ChainIndex index = new ChainIndex(store);
+        for (int height = 0; height < store.size(); height++) {
+            index.addStored(store.getHash(height));
+        }
+
+        return index;
+    }
+
+    /**
+     * Adds the next block of the chain.
+     *
+     * @param block block on top of the last indexed block
+     * @return the height of the block
+     */
+    public int add(Block block) {
+        lock.writeLock().lock();
+        try {
+            int height = blocks.size();
+            blocks.add(block);
+            heights.put(block.getHash(), height);
+            indexTransactions(block, height);
+
+            return height;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Adds the next block of the chain by its hash, the block is read from
+     * the block store when it's looked up.
+     *
+     * @param hash hash of the block on top of the last indexed block
+     * @return the height of the block
+     * @throws IllegalStateException if the index has no block store or a
+     *                               block which isn't only kept in the store
+     */
+    int addStored(String hash) {
+        lock.writeLock().lock();
+        try {
+            if (store == null || storedBlocks != blocks.size()) {
+                throw new IllegalStateException(
+                        "Block " + hash + " can't be read from the store");
+            }
+
+            int height = blocks.size();
+            blocks.add(null);
+            heights.put(hash, height);
+            storedBlocks++;
+
+            return height;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes the last block, e.g., when the chain switches to another
+     * branch.
+     *
+     * @return the removed block or null if the index is empty
+     */
+    public Block removeTip() {
+        lock.writeLock().lock();
+        try {
+            if (blocks.isEmpty()) {
+                return null;
+            }
+
+            int height = blocks.size() - 1;
+            Block block = read(height);
+            blocks.remove(height);
+            if (height < storedBlocks) {
+                storedBlocks = height;
+                indexedStoredBlocks = Math.min(indexedStoredBlocks, height);
+            }
+            heights.remove(block.getHash());
+            for (Transaction transaction : block.getTransactions()) {
+                transactions.remove(transaction.getTransactionId());
+                for (TransactionOutput output : transaction.getOutputs()) {
+                    outputs.remove(output.getId());
+                }
+            }
+
+            return block;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the number of indexed blocks.
+     *
+     * @return the height of the next block
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return blocks.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Finds a block by its height.
+     *
+     * @param height height of the block, the genesis block is 0
+     * @return the block or null if there's no block at the height
+     */
+    public Block getBlock(int height) {
+        lock.readLock().lock();
+        try {
+            return height < 0 || height >= blocks.size() ? null
+                    : read(height);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Finds a block by its hash.
+     *
+     * @param hash hash of the block
+     * @return the block or null if it isn't part of the chain
+     */
+    public Block getBlock(String hash) {
+        lock.readLock().lock();
+        try {
+            Integer height = heights.get(hash);
+            return height == null ? null : read(height);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the height of a block.
+     *
+     * @param hash hash of the block
+     * @return the height or -1 if the block isn't part of the chain
+     */
+    public int getHeight(String hash) {
+        lock.readLock().lock();
+        try {
+            return heights.getOrDefault(hash, -1);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Finds where a transaction is in the chain.
+     *
+     * @param transactionId id of the transaction
+     * @return the location or null if the transaction isn't part of the
+     * chain
+     */
+    public Location getLocation(String transactionId) {
+        indexStoredBlocks();
+        lock.readLock().lock();
+        try {
+            return transactions.get(transactionId);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Finds a transaction by its id.
+     *
+     * @param transactionId id of the transaction
+     * @return the transaction or null if it isn't part of the chain
+     */
+    public Transaction getTransaction(String transactionId) {
+        indexStoredBlocks();
+        lock.readLock().lock();
+        try {
+            return find(transactions.get(transactionId));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Finds the transaction which created an output, whether the output has
+     * been spent or not.
+     *
+     * @param outputId id of the transaction output
+     * @return the transaction or null if the output isn't part of the chain
+     */
+    public Transaction getCreatingTransaction(String outputId) {
+        indexStoredBlocks();
+        lock.readLock().lock();
+        try {
+            String transactionId = outputs.get(outputId);
+            return transactionId == null ? null
+                    : find(transactions.get(transactionId));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private Transaction find(Location location) {
+        return location == null ? null : read(location.height)
+                .getTransactions().get(location.index);
+    }
+
+    private Block read(int height) {
+        Block block = blocks.get(height);
+        return block != null ? block : store.read(height);
+    }
+
+    private void indexTransactions(Block block, int height) {
+        List<Transaction> txns = block.getTransactions();
+        for (int i = 0; i < txns.size(); i++) {
+            Transaction transaction = txns.get(i);
+            transactions.put(transaction.getTransactionId(),
+                    new Location(height, i));
+            for (TransactionOutput output : transaction.getOutputs()) {
+                outputs.put(output.getId(), transaction.getTransactionId());
+            }
+        }
+    }
+
+    /**
+     * Indexes the transactions of the blocks only kept in the store, the
+     * first time a transaction is looked up.
+     */
+    private void indexStoredBlocks() {
+        if (indexedStoredBlocks == storedBlocks) {
+            return;
+        }
+
+        lock.writeLock().lock();
+        try {
+            for (int height = indexedStoredBlocks; height < storedBlocks;
+                    height++) {
+                indexTransactions(store.read(height), height);
+            }
+            indexedStoredBlocks = storedBlocks;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * {@code Location} is the position of a transaction in the chain.
+     */
+    public static class Location {
+
+        // height of the block with the transaction
+        @Getter
+        private final int height;
+
+        // index of the transaction in the block
+        @Getter
+        private final int index;
+
+        Location(int height, int index) {
+            this.height = height;
+            this.index = index;
+        }
+
+        @Override
+        public String toString() {
+            return "block " + height + ", transaction " + index;
+        }
+    }
+}
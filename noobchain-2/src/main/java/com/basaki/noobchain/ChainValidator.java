@@ -0,0 +1,360 @@
+package com.basaki.noobchain;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * {@code ChainValidator} validates the blocks of a blockchain in two passes.
+ * <ol>
+ * <li>The checks which only need a block and its predecessor, i.e., the block
+ * hash, the link to the previous block, the proof-of-work, the transaction
+ * signatures and the transaction outputs, run in parallel across the
+ * blocks.</li>
+ * <li>The unspent transaction outputs are replayed one block after another,
+ * since every block spends the outputs of the blocks before it.</li>
+ * </ol>
+ * The replay stops at the first block which failed the parallel pass, so the
+ * result always names the first invalid block.
+ */
+@Slf4j
+@SuppressWarnings({"squid:S00112"})
+public class ChainValidator {
+
+    private final String hashTarget;
+
+    private final ForkJoinPool pool;
+
+    private final SignatureVerifier verifier;
+
+    /**
+     * Creates a validator which runs on the common fork join pool.
+     *
+     * @param difficulty number of 0’s that a block hash should start with
+     */
+    public ChainValidator(int difficulty) {
+        this(difficulty, ForkJoinPool.commonPool(),
+                SignatureVerifier.getDefault());
+    }
+
+    /**
+     * Creates a validator which runs on its own pool.
+     *
+     * @param difficulty number of 0’s that a block hash should start with
+     * @param pool       the pool used for the parallel pass
+     * @param verifier   verifier of the transaction signatures
+     * @throws IllegalArgumentException if the difficulty is out of range
+     */
+    public ChainValidator(int difficulty, ForkJoinPool pool,
+            SignatureVerifier verifier) {
+        ProofOfWork.checkDifficulty(difficulty);
+        this.hashTarget = new String(new char[difficulty]).replace('\0', '0');
+        this.pool = pool;
+        this.verifier = verifier;
+    }
+
+    /**
+     * Validates a whole blockchain starting from its genesis block.
+     *
+     * @param blocks             blocks of the chain
+     * @param genesisTransaction the transaction of the genesis block
+     * @return the validation result
+     */
+    public ValidationResult validate(List<Block> blocks,
+            Transaction genesisTransaction) {
+        if (blocks.isEmpty()) {
+            return ValidationResult.valid();
+        }
+
+        //a temporary working list of unspent transactions at a given block state.
+        UtxoSet utxos = new UtxoSet();
+        utxos.add(genesisTransaction.getOutputs().get(0));
+
+        return validate(blocks, 1, utxos);
+    }
+
+    /**
+     * Validates the blocks of a chain from a given index onwards. The blocks
+     * before the index are trusted. The unspent transaction outputs are
+     * updated with every valid block, so they end up at the state after the
+     * last block or, if a block is invalid, after the block before it.
+     *
+     * @param blocks blocks of the chain
+     * @param from   index of the first block to be validated
+     * @param utxos  the unspent transaction outputs after the block before
+     *               {@code from}
+     * @return the validation result
+     */
+    public ValidationResult validate(List<Block> blocks, int from,
+            UtxoSet utxos) {
+        ValidationResult result = checkBlocks(blocks, from);
+
+        int end = result.isValid() ? blocks.size() : result.getFailedBlock();
+        for (int i = from; i < end; i++) {
+            ValidationResult replayed =
+                    replayBlock(blocks.get(i), i, utxos, new BlockUndo());
+            if (!replayed.isValid()) {
+                result = replayed;
+                break;
+            }
+        }
+
+        if (!result.isValid()) {
+            log.error("Block {} is invalid: {}", result.getFailedBlock(),
+                    result.getReason());
+        }
+
+        return result;
+    }
+
+    /**
+     * Checks the blocks from an index onwards in parallel.
+     *
+     * @param blocks blocks of the chain
+     * @param from   index of the first block to be checked
+     * @return the result of the first block which failed the checks
+     */
+    private ValidationResult checkBlocks(List<Block> blocks, int from) {
+        try {
+            return pool.submit(() -> IntStream.range(from, blocks.size())
+                    .parallel()
+                    .mapToObj(i -> checkBlock(blocks, i))
+                    .filter(Objects::nonNull)
+                    .findFirst()
+                    .orElse(ValidationResult.valid())).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    /**
+     * Checks a block which doesn't depend on the unspent transaction outputs.
+     *
+     * @param blocks blocks of the chain
+     * @param i      index of the block to be checked
+     * @return the failed result or null if the block passed the checks
+     */
+    private ValidationResult checkBlock(List<Block> blocks, int i) {
+        return checkBlock(blocks.get(i - 1), blocks.get(i), i);
+    }
+
+    /**
+     * Checks the proof-of-work of a block, i.e., its hash starts with the
+     * difficulty's number of 0's.
+     *
+     * @param block the block to be checked
+     * @return true if the block has been mined
+     */
+    boolean isMined(Block block) {
+        return block.getHash() != null
+                && block.getHash().startsWith(hashTarget);
+    }
+
+    /**
+     * Checks a block against the block before it, without the unspent
+     * transaction outputs.
+     *
+     * @param previousBlock the block before the checked one
+     * @param currentBlock  the block to be checked
+     * @param i             height of the block to be checked
+     * @return the failed result or null if the block passed the checks
+     */
+    ValidationResult checkBlock(Block previousBlock, Block currentBlock,
+            int i) {
+        // compare the current block's hash with calculated hash
+        if (!currentBlock.getHash().equals(currentBlock.calculateHash())) {
+            return ValidationResult.invalid(i,
+                    "Calculated hash doesn't match block's hash.");
+        }
+
+        // compare the previous hash with current block's previous hash
+        if (!previousBlock.getHash().equals(currentBlock.getPreviousHash())) {
+            return ValidationResult.invalid(i,
+                    "Previous block hash doesn't match curent block's previous hash.");
+        }
+
+        //check if current block is mined
+        if (!isMined(currentBlock)) {
+            return ValidationResult.invalid(i,
+                    "Current block hasn't been mined.");
+        }
+
+        List<Transaction> transactions = currentBlock.getTransactions();
+        if (!StringUtil.getMerkleRoot(transactions)
+                .equals(currentBlock.getMerkleRoot())) {
+            return ValidationResult.invalid(i,
+                    "Merkle root doesn't match the block's transactions.");
+        }
+
+        int invalidTxn = verifier.verifyAll(transactions);
+        if (invalidTxn >= 0) {
+            return ValidationResult.invalid(i,
+                    "Transaction(" + invalidTxn + ") signature is invalid.");
+        }
+
+        for (int t = 0; t < transactions.size(); t++) {
+            Transaction currentTxn = transactions.get(t);
+
+            if (!currentTxn.calculateHash()
+                    .equals(currentTxn.getTransactionId())) {
+                return ValidationResult.invalid(i, "Transaction(" + t
+                        + ") id doesn't match its hash.");
+            }
+
+            ValidationResult outputs = checkOutputs(currentTxn, i, t);
+            if (outputs != null) {
+                return outputs;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Checks the outputs of a transaction against its signed fields. A
+     * transaction pays its value to the recipient and, if there is any, its
+     * change back to the sender, nothing else. The id of every output has to
+     * be derived from its owner, value and the transaction id, so an output
+     * can't be swapped for another one.
+     *
+     * @param txn the transaction to be checked
+     * @param i   height of the block
+     * @param t   index of the transaction in the block
+     * @return the failed result or null if the outputs passed the checks
+     */
+    private static ValidationResult checkOutputs(Transaction txn, int i,
+            int t) {
+        if (txn.getValue() <= 0 || txn.getChange() < 0) {
+            return ValidationResult.invalid(i, "Transaction(" + t
+                    + ") has a negative value or change.");
+        }
+
+        // an exact payment has no change output
+        List<TransactionOutput> outputs = txn.getOutputs();
+        if (outputs.size() != (txn.getChange() > 0 ? 2 : 1)) {
+            return ValidationResult.invalid(i, "Transaction(" + t
+                    + ") has " + outputs.size() + " outputs.");
+        }
+
+        // keys are compared by value, the blocks may have been read
+        // from a block store
+        if (!isOutput(outputs.get(0), txn.getRecipientAddress(),
+                txn.getValue(), txn.getTransactionId())) {
+            return ValidationResult.invalid(i,
+                    "Mismatch output recipient in transaction(" + t + ")");
+        }
+
+        if (outputs.size() > 1 && !isOutput(outputs.get(1),
+                txn.getSenderAddress(), txn.getChange(),
+                txn.getTransactionId())) {
+            return ValidationResult.invalid(i, "Transaction(" + t
+                    + ") change output doesn't match the change.");
+        }
+
+        return null;
+    }
+
+    private static boolean isOutput(TransactionOutput output, Address owner,
+            long value, String transactionId) {
+        return output.getOwner().equals(owner)
+                && output.getValue() == value
+                && transactionId.equals(output.getParentTransactionId())
+                && output.getId().equals(TransactionOutput.calculateId(owner,
+                value, transactionId));
+    }
+
+    /**
+     * Spends the inputs and adds the outputs of a block's transactions. A
+     * block is replayed as a whole, if one of its transactions is invalid the
+     * transactions before it are rolled back.
+     *
+     * @param block block to be replayed
+     * @param i     index of the block
+     * @param utxos the unspent transaction outputs before the block
+     * @param undo  receives the outputs spent and created by the block
+     * @return the validation result of the block
+     */
+    ValidationResult replayBlock(Block block, int i, UtxoStore utxos,
+            BlockUndo undo) {
+        List<Transaction> transactions = block.getTransactions();
+        for (int t = 0; t < transactions.size(); t++) {
+            ValidationResult result =
+                    replayTransaction(transactions.get(t), i, t, utxos, undo);
+            if (!result.isValid()) {
+                undo.undo(utxos);
+                return result;
+            }
+        }
+
+        return ValidationResult.valid();
+    }
+
+    private ValidationResult replayTransaction(Transaction currentTxn, int i,
+            int t, UtxoStore utxos, BlockUndo undo) {
+        // the outputs are checked before they're added up, so a negative
+        // output can't make up for an overflowing one
+        long outputSum = 0;
+        for (TransactionOutput output : currentTxn.getOutputs()) {
+            if (output.getValue() <= 0) {
+                return ValidationResult.invalid(i, "Transaction(" + t
+                        + ") has an output without value.");
+            }
+            try {
+                outputSum = Amount.add(outputSum, output.getValue());
+            } catch (ArithmeticException e) {
+                return ValidationResult.invalid(i, "Transaction(" + t
+                        + ") outputs exceed the maximum amount.");
+            }
+        }
+
+        long inputSum = 0;
+        List<String> spentIds = new ArrayList<>();
+        for (TransactionInput input : currentTxn.getInputs()) {
+            TransactionOutput tempOutput =
+                    utxos.get(input.getTransactionOutputId());
+
+            if (tempOutput == null) {
+                return ValidationResult.invalid(i,
+                        "Input on transaction(" + t + ") is missing.");
+            }
+
+            if (input.getUnspentTxnOutput() != null
+                    && input.getUnspentTxnOutput().getValue()
+                    != tempOutput.getValue()) {
+                return ValidationResult.invalid(i,
+                        "Input on transaction(" + t + ") is invalid.");
+            }
+
+            try {
+                inputSum = Amount.add(inputSum, tempOutput.getValue());
+            } catch (ArithmeticException e) {
+                return ValidationResult.invalid(i, "Transaction(" + t
+                        + ") inputs exceed the maximum amount.");
+            }
+            spentIds.add(input.getTransactionOutputId());
+        }
+
+        if (inputSum != outputSum) {
+            return ValidationResult.invalid(i, "Transaction(" + t
+                    + ") input doesn't match output.");
+        }
+
+        List<TransactionOutput> spent =
+                utxos.apply(spentIds, currentTxn.getOutputs());
+        if (spent == null) {
+            return ValidationResult.invalid(i, "Transaction(" + t
+                    + ") spends the same input twice.");
+        }
+
+        undo.add(currentTxn.getOutputs(), spent);
+
+        return ValidationResult.valid();
+    }
+}
@@ -0,0 +1,89 @@
+package com.basaki.noobchain;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.NavigableSet;
+
+/**
+ * {@code CoinSelector} chooses which unspent outputs of a wallet are spent
+ * to send an amount. The outputs are handed to a selector sorted by value,
+ * so a selector doesn't have to look at all of them.
+ */
+public interface CoinSelector {
+
+    /**
+     * Orders outputs by value, outputs of the same value by id.
+     */
+    Comparator<TransactionOutput> BY_VALUE =
+            Comparator.comparingLong(TransactionOutput::getValue)
+                    .thenComparing(TransactionOutput::getId);
+
+    /**
+     * Selects the outputs to be spent.
+     *
+     * @param outputs unspent outputs of the wallet in ascending order of
+     *                value
+     * @param value   amount to be sent in the smallest unit
+     * @return the selected outputs or null if the outputs can't cover the
+     * amount
+     */
+    List<TransactionOutput> select(NavigableSet<TransactionOutput> outputs,
+            long value);
+
+    /**
+     * Returns a selector which spends the largest outputs first, using as
+     * few inputs as possible.
+     *
+     * @return the largest-first selector
+     */
+    static CoinSelector largestFirst() {
+        return (outputs, value) -> {
+            List<TransactionOutput> selected = new ArrayList<>();
+            long total = 0;
+            for (TransactionOutput output : outputs.descendingSet()) {
+                selected.add(output);
+                total += output.getValue();
+                if (total >= value) {
+                    return selected;
+                }
+            }
+
+            return null;
+        };
+    }
+
+    /**
+     * Returns a selector which spends the smallest single output covering
+     * the amount, leaving the larger outputs for larger amounts. If no single
+     * output covers the amount, the largest outputs are spent.
+     *
+     * @return the smallest-sufficient selector
+     */
+    static CoinSelector smallestSufficient() {
+        CoinSelector fallback = largestFirst();
+        return (outputs, value) -> {
+            // sorts before every output of the same value
+            TransactionOutput probe =
+                    new TransactionOutput("", null, value, null);
+            TransactionOutput output = outputs.ceiling(probe);
+
+            return output != null ? Collections.singletonList(output)
+                    : fallback.select(outputs, value);
+        };
+    }
+
+    /**
+     * Returns a selector which searches for outputs adding up to exactly the
+     * amount, so the transaction doesn't need any change. The search gives up
+     * after a bounded number of steps and falls back to spending the largest
+     * outputs.
+     *
+     * @return the branch-and-bound selector
+     */
+    static CoinSelector branchAndBound() {
+        return new BranchAndBoundSelector(
+                BranchAndBoundSelector.DEFAULT_MAX_TRIES, largestFirst());
+    }
+}
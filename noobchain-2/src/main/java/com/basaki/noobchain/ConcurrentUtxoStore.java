@@ -0,0 +1,191 @@
+package com.basaki.noobchain;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * {@code ConcurrentUtxoStore} is a thread-safe {@code UtxoStore}. Outputs are
+ * looked up by id without locking. The outputs and balance of an owner are
+ * guarded by one of a fixed number of lock stripes, chosen by the owner's
+ * address. A transaction locks the stripes of every owner it spends from or
+ * pays to, always in the same order, so transactions touching different
+ * owners run in parallel while a balance query never sees half a
+ * transaction.
+ */
+public class ConcurrentUtxoStore implements UtxoStore {
+
+    private static final int DEFAULT_STRIPES = 64;
+
+    // all unspent outputs by output id
+    private final Map<String, TransactionOutput> outputs =
+            new ConcurrentHashMap<>();
+
+    // unspent outputs and balance by owner, guarded by the owner's stripe
+    private final OwnerIndex owners = OwnerIndex.createConcurrent();
+
+    private final ReadWriteLock[] stripes;
+
+    public ConcurrentUtxoStore() {
+        this(DEFAULT_STRIPES);
+    }
+
+    /**
+     * Creates a store with a given number of lock stripes.
+     *
+     * @param stripeCount number of locks shared by the owners
+     */
+    public ConcurrentUtxoStore(int stripeCount) {
+        stripes = new ReadWriteLock[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            stripes[i] = new ReentrantReadWriteLock();
+        }
+    }
+
+    @Override
+    public TransactionOutput get(String id) {
+        return outputs.get(id);
+    }
+
+    @Override
+    public boolean contains(String id) {
+        return outputs.containsKey(id);
+    }
+
+    @Override
+    public int size() {
+        return outputs.size();
+    }
+
+    /**
+     * Returns a live view of the unspent outputs. It reflects transactions
+     * applied while it's being iterated only in part.
+     */
+    @Override
+    public Collection<TransactionOutput> values() {
+        return Collections.unmodifiableCollection(outputs.values());
+    }
+
+    @Override
+    public void add(TransactionOutput output) {
+        apply(Collections.emptyList(), Collections.singletonList(output));
+    }
+
+    @Override
+    public List<TransactionOutput> apply(Collection<String> spentIds,
+            Collection<TransactionOutput> created) {
+        while (true) {
+            List<TransactionOutput> spent = new ArrayList<>(spentIds.size());
+            for (String id : spentIds) {
+                TransactionOutput output = outputs.get(id);
+                if (output == null || spent.contains(output)) {
+                    return null;
+                }
+                spent.add(output);
+            }
+
+            TreeSet<Integer> locked = new TreeSet<>();
+            for (TransactionOutput output : spent) {
+                locked.add(stripe(output.getOwner()));
+            }
+            for (TransactionOutput output : created) {
+                locked.add(stripe(output.getOwner()));
+            }
+
+            for (Integer index : locked) {
+                stripes[index].writeLock().lock();
+            }
+            try {
+                // another transaction may have spent an output before the
+                // owner's stripe was locked
+                if (isUnspent(spent)) {
+                    for (TransactionOutput output : spent) {
+                        outputs.remove(output.getId());
+                        owners.remove(output);
+                    }
+                    for (TransactionOutput output : created) {
+                        TransactionOutput previous =
+                                outputs.put(output.getId(), output);
+                        if (previous != null) {
+                            owners.remove(previous);
+                        }
+                        owners.add(output);
+                    }
+
+                    return spent;
+                }
+            } finally {
+                for (Integer index : locked.descendingSet()) {
+                    stripes[index].writeLock().unlock();
+                }
+            }
+        }
+    }
+
+    @Override
+    public long getBalance(Address owner) {
+        ReadWriteLock lock = stripes[stripe(owner)];
+        lock.readLock().lock();
+        try {
+            return owners.getBalance(owner);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns a copy of the unspent outputs owned by an address, in the
+     * order they were added.
+     *
+     * @param owner address of the owner
+     * @return the owner's unspent outputs
+     */
+    @Override
+    public Collection<TransactionOutput> getOutputs(Address owner) {
+        ReadWriteLock lock = stripes[stripe(owner)];
+        lock.readLock().lock();
+        try {
+            return new ArrayList<>(owners.getOutputs(owner));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Selects outputs of an owner while holding the owner's stripe, so the
+     * selector sees a consistent set of outputs.
+     */
+    @Override
+    public List<TransactionOutput> selectOutputs(Address owner, long value,
+            CoinSelector selector) {
+        ReadWriteLock lock = stripes[stripe(owner)];
+        lock.readLock().lock();
+        try {
+            return owners.selectOutputs(owner, value, selector);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private boolean isUnspent(List<TransactionOutput> spent) {
+        for (TransactionOutput output : spent) {
+            if (outputs.get(output.getId()) != output) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private int stripe(Address owner) {
+        int h = owner.hashCode();
+        h ^= (h >>> 16);
+        return (h & Integer.MAX_VALUE) % stripes.length;
+    }
+}
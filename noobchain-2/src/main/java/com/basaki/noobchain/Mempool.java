@@ -0,0 +1,231 @@
+package com.basaki.noobchain;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicLong;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * {@code Mempool} holds the signed transactions waiting to be added to a
+ * block. Transactions are submitted from any number of threads and checked
+ * up front: the signature has to be valid, every input has to be an unspent
+ * output of the chain, and no other pending transaction may spend the same
+ * output. A transaction claims its inputs when it's accepted and releases
+ * them once it has been added to a block, or has failed to.
+ * <p>
+ * Pending transactions are handed out by priority. Since a transaction
+ * doesn't pay a fee, the default priority is the value transferred, with
+ * ties going to the transaction submitted first.
+ */
+@Slf4j
+public class Mempool {
+
+    private static final Comparator<Transaction> BY_VALUE =
+            (a, b) -> Long.compare(b.getValue(), a.getValue());
+
+    private final UtxoStore utxos;
+
+    private final SignatureVerifier verifier;
+
+    private final ConcurrentSkipListSet<Entry> pending;
+
+    // pending transaction by the id of every output it spends
+    private final ConcurrentMap<String, Transaction> claims =
+            new ConcurrentHashMap<>();
+
+    private final AtomicLong sequence = new AtomicLong();
+
+    private final Object drainLock = new Object();
+
+    /**
+     * Creates a mempool of a chain which orders transactions by value.
+     *
+     * @param utxos the unspent transaction outputs of the chain
+     */
+    public Mempool(UtxoStore utxos) {
+        this(utxos, BY_VALUE, SignatureVerifier.getDefault());
+    }
+
+    /**
+     * Creates a mempool of a chain.
+     *
+     * @param utxos    the unspent transaction outputs of the chain
+     * @param priority orders the transactions, the first one is added to a
+     *                 block first
+     * @param verifier verifier of the transaction signatures
+     */
+    public Mempool(UtxoStore utxos, Comparator<Transaction> priority,
+            SignatureVerifier verifier) {
+        this.utxos = utxos;
+        this.verifier = verifier;
+        Comparator<Entry> byPriority =
+                (a, b) -> priority.compare(a.transaction, b.transaction);
+        this.pending = new ConcurrentSkipListSet<>(
+                byPriority.thenComparingLong(e -> e.sequence));
+    }
+
+    /**
+     * Accepts a transaction if it's valid against the unspent transaction
+     * outputs and doesn't spend an output claimed by another pending
+     * transaction.
+     *
+     * @param transaction a signed transaction
+     * @return true if the transaction was accepted
+     */
+    public boolean submit(Transaction transaction) {
+        if (transaction == null) {
+            return false;
+        }
+
+        if (!verifier.verify(transaction)) {
+            log.info("Transaction rejected, its signature is invalid.");
+            return false;
+        }
+
+        long inputSum = 0;
+        for (TransactionInput input : transaction.getInputs()) {
+            TransactionOutput unspent =
+                    utxos.get(input.getTransactionOutputId());
+            if (unspent == null) {
+                log.info("Transaction rejected, input {} is already spent.",
+                        input.getTransactionOutputId());
+                return false;
+            }
+            try {
+                inputSum = Amount.add(inputSum, unspent.getValue());
+            } catch (ArithmeticException e) {
+                log.info("Transaction rejected, its inputs exceed the "
+                        + "maximum amount.");
+                return false;
+            }
+        }
+
+        if (inputSum < NoobChain.MINIMUM_TRANSACTION_VALUE) {
+            log.info("Transaction rejected, its inputs of {} are too small.",
+                    Amount.toString(inputSum));
+            return false;
+        }
+
+        if (transaction.getValue() <= 0 || transaction.getChange() < 0
+                || inputSum - transaction.getValue()
+                != transaction.getChange()) {
+            log.info("Transaction rejected, its value and change don't "
+                    + "match its inputs of {}.", Amount.toString(inputSum));
+            return false;
+        }
+
+        if (!claim(transaction)) {
+            log.info("Transaction rejected, it spends an output of a "
+                    + "pending transaction.");
+            return false;
+        }
+
+        pending.add(new Entry(transaction, sequence.getAndIncrement(),
+                BlockCodec.getEncodedLength(transaction)));
+
+        return true;
+    }
+
+    /**
+     * Takes the pending transactions with the highest priority out of the
+     * mempool. A transaction which doesn't fit in the remaining byte budget
+     * is skipped and stays pending. The taken transactions keep their inputs
+     * claimed until they're released.
+     *
+     * @param maxTransactions maximum number of transactions taken
+     * @param maxBytes        maximum encoded size of the transactions taken,
+     *                        as submitted, i.e., before their outputs are
+     *                        created
+     * @return the transactions in priority order
+     */
+    public List<Transaction> drain(int maxTransactions, int maxBytes) {
+        List<Transaction> drained = new ArrayList<>();
+
+        synchronized (drainLock) {
+            int bytes = 0;
+            Iterator<Entry> iterator = pending.iterator();
+            while (drained.size() < maxTransactions && iterator.hasNext()) {
+                Entry entry = iterator.next();
+                if (bytes + entry.length <= maxBytes) {
+                    iterator.remove();
+                    drained.add(entry.transaction);
+                    bytes += entry.length;
+                }
+            }
+        }
+
+        return drained;
+    }
+
+    /**
+     * Releases the inputs of drained transactions once they have been added
+     * to a block or discarded.
+     *
+     * @param transactions drained transactions
+     */
+    public void release(Collection<Transaction> transactions) {
+        for (Transaction transaction : transactions) {
+            unclaim(transaction, transaction.getInputs().size());
+        }
+    }
+
+    /**
+     * Puts drained transactions which haven't been added to a block back
+     * into the mempool. Their inputs are still claimed, so no other
+     * transaction spending them has been accepted in the meantime.
+     *
+     * @param transactions drained transactions
+     */
+    public void restore(Collection<Transaction> transactions) {
+        for (Transaction transaction : transactions) {
+            pending.add(new Entry(transaction, sequence.getAndIncrement(),
+                    BlockCodec.getEncodedLength(transaction)));
+        }
+    }
+
+    public int size() {
+        return pending.size();
+    }
+
+    private boolean claim(Transaction transaction) {
+        List<TransactionInput> inputs = transaction.getInputs();
+        for (int i = 0; i < inputs.size(); i++) {
+            if (claims.putIfAbsent(inputs.get(i).getTransactionOutputId(),
+                    transaction) != null) {
+                unclaim(transaction, i);
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private void unclaim(Transaction transaction, int inputCount) {
+        List<TransactionInput> inputs = transaction.getInputs();
+        for (int i = 0; i < inputCount; i++) {
+            claims.remove(inputs.get(i).getTransactionOutputId(), transaction);
+        }
+    }
+
+    private static class Entry {
+
+        private final Transaction transaction;
+
+        private final long sequence;
+
+        // encoded size of the transaction
+        private final int length;
+
+        Entry(Transaction transaction, long sequence, int length) {
+            this.transaction = transaction;
+            this.sequence = sequence;
+            this.length = length;
+        }
+    }
+}
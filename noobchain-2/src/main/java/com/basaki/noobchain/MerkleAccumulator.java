@@ -0,0 +1,73 @@
+package com.basaki.noobchain;
+
+import java.util.Arrays;
+import lombok.Getter;
+
+/**
+ * {@code MerkleAccumulator} computes the root of a {@code MerkleTree} while
+ * transactions are added one at a time. It only keeps the frontier of the
+ * tree, i.e., at every level the root of the complete subtree which is still
+ * waiting for its right sibling. Adding a transaction merges the complete
+ * subtrees it completes, which is O(1) hashes on average and O(log n) at
+ * most, and the root is folded from the frontier in O(log n) hashes.
+ * <p>
+ * The root is the same as the root of a {@code MerkleTree} over the same
+ * transactions. An accumulator isn't thread-safe.
+ */
+public class MerkleAccumulator {
+
+    // frontier[level] is the root of a complete subtree of 2^level leaves
+    private byte[][] frontier = new byte[8][];
+
+    @Getter
+    private int size;
+
+    // root of the current leaves, null if it has to be folded again
+    private String rootHash = "";
+
+    /**
+     * Adds the next transaction.
+     *
+     * @param transactionId id of the transaction
+     */
+    public void add(String transactionId) {
+        byte[] node = MerkleTree.hashLeaf(transactionId);
+
+        int level = 0;
+        while (frontier.length > level && frontier[level] != null) {
+            node = MerkleTree.hashParent(frontier[level], node);
+            frontier[level] = null;
+            level++;
+        }
+
+        if (level == frontier.length) {
+            frontier = Arrays.copyOf(frontier, frontier.length * 2);
+        }
+        frontier[level] = node;
+
+        size++;
+        rootHash = null;
+    }
+
+    /**
+     * Returns the merkle root of the transactions added so far. A subtree
+     * without a sibling is promoted, so the frontier is folded from the
+     * smallest subtree upwards.
+     *
+     * @return the merkle root or an empty string if there are no transactions
+     */
+    public String getRootHash() {
+        if (rootHash == null) {
+            byte[] root = null;
+            for (byte[] node : frontier) {
+                if (node != null) {
+                    root = root == null ? node
+                            : MerkleTree.hashParent(node, root);
+                }
+            }
+            rootHash = StringUtil.toString(root);
+        }
+
+        return rootHash;
+    }
+}
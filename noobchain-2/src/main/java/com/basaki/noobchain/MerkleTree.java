@@ -0,0 +1,264 @@
+package com.basaki.noobchain;
+
+import java.nio.charset.StandardCharsets;
+import java.security.DigestException;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.IntStream;
+import lombok.Getter;
+
+/**
+ * {@code MerkleTree} is a binary hash tree over the transactions of a block.
+ * A leaf is the SHA-256 hash of a transaction id and a parent is the SHA-256
+ * hash of its two children's raw 32 byte hashes. Leaves and parents are
+ * hashed with different prefixes, so a leaf can't pass for a parent. A node
+ * without a sibling, the last node of a level with an odd number of nodes,
+ * is promoted to the next level as it is.
+ * <p>
+ * Every level is kept in a flat byte array, so the tree can hand out an
+ * inclusion proof of any transaction. Large levels are hashed in parallel.
+ */
+@SuppressWarnings({"squid:S00112"})
+public class MerkleTree {
+
+    private static final int HASH_LENGTH = Sha256.HASH_LENGTH;
+
+    // prefixes of the hashed leaves and parents
+    private static final byte LEAF = 0;
+
+    private static final byte PARENT = 1;
+
+    // smaller levels are hashed on the calling thread
+    private static final int PARALLEL_THRESHOLD = 2048;
+
+    // levels[0] are the leaves, the last level is the root
+    private final byte[][] levels;
+
+    @Getter
+    private final int leafCount;
+
+    /**
+     * Builds the tree of a list of transactions.
+     *
+     * @param transactions transactions in block order
+     */
+    public MerkleTree(List<Transaction> transactions) {
+        this(leaves(transactions), transactions.size());
+    }
+
+    /**
+     * Builds the tree of a number of leaves.
+     *
+     * @param leaves    the leaf hashes, one after another
+     * @param leafCount number of leaves
+     */
+    MerkleTree(byte[] leaves, int leafCount) {
+        this.leafCount = leafCount;
+
+        List<byte[]> built = new ArrayList<>();
+        built.add(leaves);
+        for (int count = leafCount; count > 1; count = (count + 1) / 2) {
+            built.add(parents(built.get(built.size() - 1), count));
+        }
+        this.levels = built.toArray(new byte[0][]);
+    }
+
+    /**
+     * Returns the root hash.
+     *
+     * @return a copy of the raw root hash or null if the tree has no leaves
+     */
+    public byte[] getRoot() {
+        return leafCount == 0 ? null
+                : Arrays.copyOf(levels[levels.length - 1], HASH_LENGTH);
+    }
+
+    /**
+     * Returns the root hash as a hexadecimal string.
+     *
+     * @return the root hash or an empty string if the tree has no leaves
+     */
+    public String getRootHash() {
+        return leafCount == 0 ? "" : StringUtil.toString(getRoot());
+    }
+
+    /**
+     * Creates the proof that a transaction is included in the tree, i.e.,
+     * the hashes of the siblings on the path from its leaf to the root.
+     *
+     * @param index index of the transaction in the block
+     * @return the inclusion proof
+     */
+    public Proof getProof(int index) {
+        if (index < 0 || index >= leafCount) {
+            throw new IndexOutOfBoundsException("Index: " + index
+                    + ", Size: " + leafCount);
+        }
+
+        List<byte[]> siblings = new ArrayList<>();
+        int position = index;
+        int count = leafCount;
+        for (int level = 0; count > 1; level++) {
+            int sibling = position ^ 1;
+            if (sibling < count) {
+                siblings.add(Arrays.copyOfRange(levels[level],
+                        sibling * HASH_LENGTH, (sibling + 1) * HASH_LENGTH));
+            }
+            position >>= 1;
+            count = (count + 1) / 2;
+        }
+
+        return new Proof(index, leafCount, siblings);
+    }
+
+    /**
+     * Verifies that a transaction is included in a block, knowing only the
+     * block's merkle root.
+     *
+     * @param transactionId id of the transaction
+     * @param proof         inclusion proof of the transaction
+     * @param rootHash      merkle root of the block
+     * @return true if the proof leads from the transaction to the root
+     */
+    public static boolean verify(String transactionId, Proof proof,
+            String rootHash) {
+        if (proof.index < 0 || proof.index >= proof.leafCount) {
+            return false;
+        }
+
+        byte[] node = hashLeaf(transactionId);
+
+        int next = 0;
+        int position = proof.index;
+        for (int count = proof.leafCount; count > 1;
+                count = (count + 1) / 2) {
+            if ((position ^ 1) < count) {
+                if (next == proof.siblings.size()) {
+                    return false;
+                }
+
+                byte[] sibling = proof.siblings.get(next++);
+                node = (position & 1) == 0 ? hashParent(node, sibling)
+                        : hashParent(sibling, node);
+            }
+            position >>= 1;
+        }
+
+        return next == proof.siblings.size()
+                && StringUtil.toString(node).equals(rootHash);
+    }
+
+    /**
+     * Hashes the leaf of a transaction.
+     *
+     * @param transactionId id of the transaction
+     * @return the raw leaf hash
+     */
+    static byte[] hashLeaf(String transactionId) {
+        MessageDigest digest = StringUtil.getSha256Digest();
+        digest.update(LEAF);
+        return digest.digest(transactionId.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Hashes two sibling nodes into their parent.
+     *
+     * @param left  raw hash of the left node
+     * @param right raw hash of the right node
+     * @return the raw parent hash
+     */
+    static byte[] hashParent(byte[] left, byte[] right) {
+        MessageDigest digest = StringUtil.getSha256Digest();
+        digest.update(PARENT);
+        digest.update(left);
+        return digest.digest(right);
+    }
+
+    private static byte[] leaves(List<Transaction> transactions) {
+        byte[] leaves = new byte[transactions.size() * HASH_LENGTH];
+        for (int i = 0; i < transactions.size(); i++) {
+            MessageDigest digest = StringUtil.getSha256Digest();
+            digest.update(LEAF);
+            digest.update(transactions.get(i).getTransactionId().getBytes(
+                    StandardCharsets.UTF_8));
+            hash(digest, leaves, i * HASH_LENGTH);
+        }
+
+        return leaves;
+    }
+
+    /**
+     * Hashes a level into the level above it.
+     *
+     * @param children the nodes of a level
+     * @param count    number of nodes in the level
+     * @return the nodes of the level above
+     */
+    private static byte[] parents(byte[] children, int count) {
+        int parentCount = (count + 1) / 2;
+        byte[] parents = new byte[parentCount * HASH_LENGTH];
+
+        IntStream indexes = IntStream.range(0, parentCount);
+        if (parentCount >= PARALLEL_THRESHOLD) {
+            indexes = indexes.parallel();
+        }
+        indexes.forEach(i -> {
+            int left = 2 * i * HASH_LENGTH;
+            if (2 * i + 1 < count) {
+                MessageDigest digest = StringUtil.getSha256Digest();
+                digest.update(PARENT);
+                digest.update(children, left, 2 * HASH_LENGTH);
+                hash(digest, parents, i * HASH_LENGTH);
+            } else {
+                // promote the node without a sibling
+                System.arraycopy(children, left, parents, i * HASH_LENGTH,
+                        HASH_LENGTH);
+            }
+        });
+
+        return parents;
+    }
+
+    private static void hash(MessageDigest digest, byte[] out, int offset) {
+        try {
+            digest.digest(out, offset, HASH_LENGTH);
+        } catch (DigestException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * {@code Proof} is the proof that a transaction is included in a block.
+     * It holds the sibling hashes on the path from the transaction's leaf to
+     * the root, starting at the leaf. A node which was promoted without a
+     * sibling has no hash in the proof.
+     */
+    public static class Proof {
+
+        @Getter
+        private final int index;
+
+        @Getter
+        private final int leafCount;
+
+        @Getter
+        private final List<byte[]> siblings;
+
+        /**
+         * Creates an inclusion proof.
+         *
+         * @param index     index of the transaction in the block
+         * @param leafCount number of transactions in the block
+         * @param siblings  the raw sibling hashes from the leaf upwards
+         */
+        public Proof(int index, int leafCount, List<byte[]> siblings) {
+            this.index = index;
+            this.leafCount = leafCount;
+            this.siblings = Collections.unmodifiableList(
+                    new ArrayList<>(siblings));
+        }
+    }
+}
@@ -1,10 +1,21 @@
 package com.basaki.noobchain;
 
+import java.io.UncheckedIOException;
+import java.math.BigInteger;
+import java.nio.file.Path;
 import java.security.Security;
+import java.util.AbstractList;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 import org.bouncycastle.jce.provider.BouncyCastleProvider;
 
@@ -12,155 +23,700 @@ import org.bouncycastle.jce.provider.BouncyCastleProvider;
 @SuppressWarnings({"squid:S3776", "squid:S3008"})
 public class NoobChain {
 
-    public static final float MINIMUM_TRANSACTION_VALUE = 0.1f;
+    // in the smallest unit, a tenth of a noob coin
+    public static final long MINIMUM_TRANSACTION_VALUE = Amount.COIN / 10;
 
     private static final int DIFFICULTY = 3;
 
-    // unspent transactions
-    protected static Map<String, TransactionOutput> UTXO = new HashMap<>();
+    private static final int SNAPSHOTS_KEPT = 2;
 
     private Transaction genesisTransaction;
 
-    private List<Block> blockchain = new ArrayList<>();
+    // blocks of the chain, from the genesis block to the tip
+    private List<Node> blockchain = new ArrayList<>();
+
+    // every known block by hash, the blocks of the chain and the blocks of
+    // the branches competing with it
+    private final Map<String, Node> tree = new HashMap<>();
+
+    // last block of the chain
+    private Node tip;
+
+    // hashes of the blocks which failed to replay and of the blocks after
+    // them
+    private final Set<String> invalid = new HashSet<>();
+
+    // work of a single block, every block is mined with the same difficulty
+    private final BigInteger blockWork;
+
+    // lookups of blocks and transactions by hash, height and id
+    @Getter
+    private final ChainIndex index;
+
+    private final Miner miner;
+
+    // number of 0's every block hash has to start with
+    private final int difficulty;
+
+    // unspent transactions
+    @Getter
+    private final UtxoStore utxos;
+
+    private final ChainValidator validator;
+
+    private final Object checkpointLock = new Object();
+
+    // the last verified block and the unspent outputs after it
+    private Checkpoint checkpoint;
+
+    // persists the blocks, null if the chain is only kept in memory
+    private final BlockStore store;
+
+    // directory of the UTXO snapshots, null if no snapshots are taken
+    private final Path snapshots;
+
+    // number of blocks between two snapshots
+    private final int snapshotInterval;
+
+    // height of the last snapshot taken or loaded
+    private int snapshotHeight;
+
+    private final List<BlockListener> listeners = new CopyOnWriteArrayList<>();
+
+    public NoobChain() {
+        this(Miner.getDefault());
+    }
+
+    /**
+     * Creates a blockchain whose blocks are mined by the given miner.
+     *
+     * @param miner miner doing the proof-of-work of new blocks
+     */
+    public NoobChain(Miner miner) {
+        this(miner, DIFFICULTY);
+    }
+
+    /**
+     * Creates a blockchain with its own proof-of-work difficulty.
+     *
+     * @param miner      miner doing the proof-of-work of new blocks
+     * @param difficulty number of 0’s that a block hash should start with
+     */
+    public NoobChain(Miner miner, int difficulty) {
+        this(miner, difficulty, new ConcurrentUtxoStore());
+    }
+
+    /**
+     * Creates a blockchain which keeps its unspent transaction outputs in the
+     * given store.
+     *
+     * @param miner      miner doing the proof-of-work of new blocks
+     * @param difficulty number of 0’s that a block hash should start with
+     * @param utxos      store of the unspent transaction outputs
+     */
+    public NoobChain(Miner miner, int difficulty, UtxoStore utxos) {
+        this(miner, difficulty, utxos, null);
+    }
+
+    /**
+     * Creates a blockchain which persists its blocks in a block store. The
+     * blocks already in the store are loaded and their transactions are
+     * replayed into the unspent transaction outputs. The loaded blocks are
+     * verified by the first validation.
+     *
+     * @param miner      miner doing the proof-of-work of new blocks
+     * @param difficulty number of 0’s that a block hash should start with
+     * @param utxos      store of the unspent transaction outputs
+     * @param store      store of the blocks, null to keep them only in memory
+     */
+    public NoobChain(Miner miner, int difficulty, UtxoStore utxos,
+            BlockStore store) {
+        this(miner, difficulty, utxos, store, null, 0);
+    }
+
+    /**
+     * Creates a blockchain which persists its blocks in a block store and
+     * takes a snapshot of its unspent transaction outputs every few blocks.
+     * On loading, the unspent outputs are taken from the latest snapshot of
+     * a stored block and only the blocks after it are read and replayed. The
+     * blocks of the snapshot are read from the store when they're needed.
+     * The first validation starts from the snapshot as well.
+     *
+     * @param miner            miner doing the proof-of-work of new blocks
+     * @param difficulty       number of 0’s that a block hash should start
+     *                         with
+     * @param utxos            store of the unspent transaction outputs
+     * @param store            store of the blocks, null to keep them only in
+     *                         memory
+     * @param snapshots        directory of the snapshots, null to take none
+     * @param snapshotInterval number of blocks between two snapshots
+     */
+    public NoobChain(Miner miner, int difficulty, UtxoStore utxos,
+            BlockStore store, Path snapshots, int snapshotInterval) {
+        this.miner = miner;
+        this.difficulty = difficulty;
+        this.utxos = utxos;
+        this.validator = new ChainValidator(difficulty);
+        this.store = store;
+        this.index = new ChainIndex(store);
+        this.blockWork = BigInteger.ONE.shiftLeft(4 * difficulty);
+        this.snapshots = snapshots;
+        this.snapshotInterval = snapshotInterval;
+
+        if (store != null) {
+            load();
+        }
+    }
+
+    private void load() {
+        UtxoSnapshot snapshot = findSnapshot();
+        int replayFrom = 0;
+        if (snapshot != null) {
+            utxos.apply(Collections.emptyList(), snapshot.getOutputs());
+            replayFrom = snapshot.getHeight() + 1;
+            snapshotHeight = snapshot.getHeight();
+            checkpoint = new Checkpoint(snapshot);
+            log.info("Loaded {} unspent outputs from the snapshot at "
+                    + "height {}", snapshot.getOutputs().size(),
+                    snapshot.getHeight());
+        }
+
+        if (store.size() > 0) {
+            genesisTransaction = store.read(0).getTransactions().get(0);
+        }
+
+        for (int height = 0; height < store.size(); height++) {
+            if (height < replayFrom) {
+                // the blocks of the snapshot are only indexed by hash and
+                // read when they're needed, without an undo record they
+                // can't be taken off the chain anymore
+                link(new Node(store.getHash(height), tip, blockWork), null);
+            } else {
+                Block block = store.read(height);
+                BlockUndo undo = replay(block, height);
+                link(new Node(block, tip, blockWork), undo);
+            }
+        }
+
+        log.info("Loaded {} blocks, replayed {}", blockchain.size(),
+                blockchain.size() - replayFrom);
+    }
+
+    private BlockUndo replay(Block block, int height) {
+        BlockUndo undo = new BlockUndo();
+        if (height == 0) {
+            TransactionOutput output = genesisTransaction.getOutputs().get(0);
+            utxos.add(output);
+            undo.add(Collections.singletonList(output),
+                    Collections.emptyList());
+            return undo;
+        }
+
+        for (Transaction transaction : block.getTransactions()) {
+            List<String> spentIds = new ArrayList<>();
+            for (TransactionInput input : transaction.getInputs()) {
+                spentIds.add(input.getTransactionOutputId());
+            }
+
+            List<TransactionOutput> spent =
+                    utxos.apply(spentIds, transaction.getOutputs());
+            if (spent == null) {
+                throw new IllegalStateException("Block " + height
+                        + " spends a missing transaction output.");
+            }
+            undo.add(transaction.getOutputs(), spent);
+        }
+
+        return undo;
+    }
+
+    /**
+     * Finds the latest snapshot taken after a block which is still part of
+     * the stored chain. Damaged snapshots are skipped.
+     *
+     * @return the snapshot or null if there's none
+     */
+    private UtxoSnapshot findSnapshot() {
+        if (snapshots == null) {
+            return null;
+        }
+
+        for (Path file : UtxoSnapshot.list(snapshots)) {
+            try {
+                UtxoSnapshot snapshot = UtxoSnapshot.read(file);
+                if (snapshot.getHeight() < store.size()
+                        && store.getHeight(snapshot.getBlockHash())
+                        == snapshot.getHeight()) {
+                    return snapshot;
+                }
+                log.info("Skipping snapshot {}, its block isn't stored",
+                        file);
+            } catch (RuntimeException e) {
+                log.warn("Skipping snapshot {}", file, e);
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Takes a snapshot of the unspent transaction outputs after the tip of
+     * the chain. Only the two latest snapshots are kept.
+     *
+     * @return the snapshot file
+     * @throws IllegalStateException if the chain has no snapshot directory
+     *                               or no blocks
+     */
+    public synchronized Path takeSnapshot() {
+        if (snapshots == null || tip == null) {
+            throw new IllegalStateException("No snapshot can be taken");
+        }
+
+        Path file = UtxoSnapshot.write(snapshots, tip.height,
+                tip.hash, utxos.values());
+        snapshotHeight = tip.height;
+        UtxoSnapshot.prune(snapshots, SNAPSHOTS_KEPT);
+        log.info("Took a snapshot of {} unspent outputs at height {}",
+                utxos.size(), tip.height);
+
+        return file;
+    }
+
+    /**
+     * Takes a snapshot if the tip is far enough from the last one. A failed
+     * snapshot doesn't affect the chain, it's taken again with the next
+     * block.
+     */
+    private void snapshotIfDue() {
+        if (snapshots == null || snapshotInterval <= 0
+                || tip.height - snapshotHeight < snapshotInterval) {
+            return;
+        }
+
+        try {
+            takeSnapshot();
+        } catch (UncheckedIOException e) {
+            log.error("Failed to take a snapshot at height {}", tip.height,
+                    e);
+        }
+    }
 
     public synchronized void addBlock(Transaction transaction) {
+        addBlock(Collections.singletonList(transaction));
+    }
+
+    /**
+     * Mines a block with a batch of transactions and adds it to the chain.
+     * Transactions which turn out to be invalid are left out of the block.
+     * The first transaction of the first block is the genesis transaction.
+     *
+     * @param transactions transactions to be added
+     * @return the mined block
+     */
+    public synchronized Block addBlock(List<Transaction> transactions) {
         Block block;
 
         if (blockchain.isEmpty()) {
             // genesis block
-            genesisTransaction = transaction;
+            genesisTransaction = transactions.get(0);
             //manually set the transaction id
             genesisTransaction.setTransactionId("0");
 
-            List<TransactionOutput> outputs = transaction.getOutputs();
+            List<TransactionOutput> outputs = genesisTransaction.getOutputs();
             if (!outputs.isEmpty()) {
                 TransactionOutput output = outputs.get(0);
 
                 // it's important to store the first
                 // transaction in the UTXO list
-                UTXO.put(output.getId(), output);
+                utxos.add(output);
             }
 
             block = new Block("0");
         } else {
-            block = new Block(blockchain.get(blockchain.size() - 1).getHash());
+            block = new Block(tip.hash);
         }
 
-        block.addTransaction(transaction);
-        block.mineBlock(DIFFICULTY);
+        for (Transaction transaction : transactions) {
+            block.addTransaction(transaction, utxos);
+        }
+        block.mineBlock(difficulty, miner);
+
+        if (store != null) {
+            store.append(block);
+        }
 
         //add block to the blockchain list
-        blockchain.add(block);
+        BlockUndo undo = BlockUndo.of(block);
+        List<TransactionOutput> spent = undo.getSpent();
+        link(new Node(block, tip, blockWork), undo);
+        publish(new BlockCommitEvent(block, tip.height, spent), true);
+        snapshotIfDue();
+
+        return block;
     }
 
-    public Boolean isChainValid() {
-        if (blockchain.isEmpty()) {
+    /**
+     * Accepts a block mined elsewhere, e.g., received from another node. The
+     * block may extend any known block, not only the tip of the chain. If
+     * the branch ending with the block has more cumulative work than the
+     * chain, the chain switches to it: the blocks after the fork are taken
+     * off with their undo records and the blocks of the branch are replayed
+     * on top of the fork. If a block of the branch turns out to be invalid,
+     * the chain stays as it was.
+     *
+     * @param block a mined block, the genesis block if the chain is empty
+     * @return true if the block was accepted, false if it's invalid, already
+     * known, part of an invalid branch or its previous block is unknown
+     */
+    public synchronized boolean acceptBlock(Block block) {
+        if (tree.containsKey(block.getHash())) {
+            log.info("Block {} discarded, it's already known.",
+                    block.getHash());
+            return false;
+        }
+
+        if (invalid.contains(block.getHash())
+                || invalid.contains(block.getPreviousHash())) {
+            invalid.add(block.getHash());
+            log.info("Block {} discarded, it's part of an invalid branch.",
+                    block.getHash());
+            return false;
+        }
+
+        if (tip == null) {
+            return acceptGenesis(block);
+        }
+
+        Node parent = tree.get(block.getPreviousHash());
+        if (parent == null) {
+            log.info("Block {} discarded, its previous block is unknown.",
+                    block.getHash());
+            return false;
+        }
+
+        ValidationResult result;
+        try {
+            result = validator.checkBlock(getBlock(parent), block,
+                    parent.height + 1);
+        } catch (RuntimeException e) {
+            log.info("Block {} discarded, it can't be checked.",
+                    block.getHash(), e);
+            return false;
+        }
+        if (result != null) {
+            log.info("Block {} discarded: {}", block.getHash(),
+                    result.getReason());
+            return false;
+        }
+
+        Node node = new Node(block, parent, blockWork);
+        tree.put(block.getHash(), node);
+        if (node.work.compareTo(tip.work) <= 0) {
+            log.info("Block {} added to a branch at height {}",
+                    block.getHash(), node.height);
             return true;
         }
 
-        String hashTarget = new String(new char[DIFFICULTY]).replace('\0', '0');
-        HashMap<String, TransactionOutput> tempUTXOs =
-                new HashMap<>(); //a temporary working list of unspent transactions at a given block state.
-        tempUTXOs.put(genesisTransaction.getOutputs().get(0).getId(),
-                genesisTransaction.getOutputs().get(0));
+        return reorganize(node);
+    }
 
-        //loop through the blockchain to check hashes
-        for (int i = 1; i < blockchain.size(); i++) {
-            Block currentBlock = blockchain.get(i);
-            Block previousBlock = blockchain.get(i - 1);
+    private boolean acceptGenesis(Block block) {
+        List<Transaction> transactions = block.getTransactions();
+        if (!"0".equals(block.getPreviousHash())
+                || !block.getHash().equals(block.calculateHash())
+                || !validator.isMined(block)
+                || transactions.isEmpty()
+                || transactions.get(0).getOutputs().isEmpty()) {
+            log.info("Block {} discarded, it isn't a genesis block.",
+                    block.getHash());
+            return false;
+        }
 
-            // compare the current block's hash with calculated hash
-            if (!currentBlock.getHash().equals(currentBlock.calculateHash())) {
-                log.error("Calculated hash doesn't match block's hash.");
-                return false;
+        genesisTransaction = transactions.get(0);
+        TransactionOutput output = genesisTransaction.getOutputs().get(0);
+        utxos.add(output);
+
+        BlockUndo undo = new BlockUndo();
+        undo.add(Collections.singletonList(output), Collections.emptyList());
+        link(new Node(block, null, blockWork), undo);
+        if (store != null) {
+            store.append(block);
+        }
+        publish(new BlockCommitEvent(block, 0, Collections.emptyList()),
+                true);
+        snapshotIfDue();
+
+        return true;
+    }
+
+    /**
+     * Switches the chain to the branch ending with a block which has more
+     * cumulative work than the tip.
+     *
+     * @param target last block of the heavier branch
+     * @return true if the chain switched to the branch or the branch is kept
+     * aside because it forks below the snapshot the chain was loaded from
+     */
+    private boolean reorganize(Node target) {
+        // blocks of the branch after the fork, the oldest first
+        Deque<Node> branch = new ArrayDeque<>();
+        Node fork = target;
+        while (!isLinked(fork)) {
+            branch.addFirst(fork);
+            fork = fork.parent;
+        }
+
+        for (Node node = tip; node != fork; node = node.parent) {
+            if (node.undo == null) {
+                log.info("Block {} stays on a branch, the chain can't be "
+                        + "reorganized below its snapshot.",
+                        target.hash);
+                return true;
             }
+        }
 
-            // compare the previous hash with current block's previous hash
-            if (!previousBlock.getHash().equals(
-                    currentBlock.getPreviousHash())) {
-                log.error(
-                        "Previous block hash doesn't match curent block's previous hash.");
+        List<BlockCommitEvent> disconnected = new ArrayList<>();
+        List<Node> removed = new ArrayList<>();
+        while (tip != fork) {
+            removed.add(tip);
+            disconnected.add(unlink());
+        }
+
+        List<BlockCommitEvent> connected = new ArrayList<>();
+        for (Node node : branch) {
+            BlockUndo undo = new BlockUndo();
+            ValidationResult result = validator.replayBlock(node.block,
+                    node.height, utxos, undo);
+            if (!result.isValid()) {
+                log.info("Block {} discarded: {}", node.hash,
+                        result.getReason());
+                restore(fork, removed, node);
                 return false;
             }
 
-            //check if current block is mined
-            if (!currentBlock.getHash().substring(0, DIFFICULTY).equals(
-                    hashTarget)) {
-                log.error("Current block hasn't been mined.");
-                return false;
+            List<TransactionOutput> spent = undo.getSpent();
+            link(node, undo);
+            connected.add(new BlockCommitEvent(node.block, node.height,
+                    spent));
+        }
+
+        if (store != null) {
+            store.truncate(fork.height + 1);
+            for (Node node : branch) {
+                store.append(node.block);
             }
+        }
 
-            //loop through blockchains transactions
-            TransactionOutput tempOutput;
-            List<Transaction> transactions = currentBlock.getTransactions();
-            for (int t = 0; t < transactions.size(); t++) {
-                Transaction currentTxn = transactions.get(t);
+        if (!removed.isEmpty()) {
+            log.info("Switched to a branch at height {}, {} blocks "
+                    + "replaced by {}", fork.height + 1, removed.size(),
+                    branch.size());
+        }
+        for (BlockCommitEvent event : disconnected) {
+            publish(event, false);
+        }
+        for (BlockCommitEvent event : connected) {
+            publish(event, true);
+        }
+        snapshotIfDue();
 
-                if (!currentTxn.verifySignature()) {
-                    log.error("Transaction({}) signature is invalid.", t);
-                    return false;
-                }
+        return true;
+    }
 
-                if (currentTxn.getInputSum() != currentTxn.getOutputSum()) {
-                    log.error("Transaction({}) input doesn't match output.", t);
-                    return false;
-                }
+    /**
+     * Brings back the blocks taken off the chain after a branch failed to
+     * replay, and forgets the invalid block along with the blocks after it.
+     */
+    private void restore(Node fork, List<Node> removed, Node invalidNode) {
+        while (tip != fork) {
+            unlink();
+        }
+
+        for (int i = removed.size() - 1; i >= 0; i--) {
+            Node node = removed.get(i);
+            BlockUndo undo = new BlockUndo();
+            if (!validator.replayBlock(node.block, node.height, utxos, undo)
+                    .isValid()) {
+                throw new IllegalStateException("Block " + node.height
+                        + " can't be restored.");
+            }
+            link(node, undo);
+        }
 
-                for (TransactionInput input : currentTxn.getInputs()) {
-                    tempOutput = tempUTXOs.get(input.getTransactionOutputId());
+        tree.values().removeIf(node -> {
+            if (node.descendsFrom(invalidNode)) {
+                invalid.add(node.hash);
+                return true;
+            }
+            return false;
+        });
+    }
 
-                    if (tempOutput == null) {
-                        log.error("Input on transaction({}) is missing.", t);
-                        return false;
-                    }
+    /**
+     * Makes a block the new tip of the chain. Its transactions have already
+     * been applied to the unspent transaction outputs.
+     */
+    private void link(Node node, BlockUndo undo) {
+        node.undo = undo;
+        tree.put(node.hash, node);
+        blockchain.add(node);
+        if (node.block == null) {
+            index.addStored(node.hash);
+        } else {
+            index.add(node.block);
+        }
+        tip = node;
+    }
 
-                    if (input.getUnspentTxnOutput().getValue()
-                            != tempOutput.getValue()) {
-                        log.error("Input on transaction({}) is invalid.", t);
-                        return false;
-                    }
+    /**
+     * Takes the tip off the chain and reverts its transactions.
+     *
+     * @return the event of the removed block
+     */
+    private BlockCommitEvent unlink() {
+        Node node = tip;
+        List<TransactionOutput> spent = node.undo.getSpent();
+        node.undo.undo(utxos);
+        node.undo = null;
+
+        blockchain.remove(blockchain.size() - 1);
+        index.removeTip();
+        tip = node.parent;
+
+        return new BlockCommitEvent(node.block, node.height, spent);
+    }
 
-                    tempUTXOs.remove(input.getTransactionOutputId());
-                }
+    private boolean isLinked(Node node) {
+        return node.height < blockchain.size()
+                && blockchain.get(node.height) == node;
+    }
 
-                for (TransactionOutput output : currentTxn.getOutputs()) {
-                    tempUTXOs.put(output.getId(), output);
-                }
+    /**
+     * Returns the block of a node, reading it from the block store if the
+     * node only holds its hash.
+     */
+    private Block getBlock(Node node) {
+        return node.block != null ? node.block : store.read(node.height);
+    }
 
-                if (currentTxn.getOutputs().get(0).getRecipient()
-                        != currentTxn.getRecipient()) {
-                    log.error("Mismatch output recipient in transaction({})",
-                            t);
-                    return false;
-                }
-                if (currentTxn.getOutputs().get(1).getRecipient()
-                        != currentTxn.getSender()) {
-                    log.error(
-                            "Transaction({}) output recipient is not the sender.",
-                            t);
-                    return false;
+    /**
+     * Registers a listener which is notified of every block added from now
+     * on. Blocks loaded from the block store aren't published.
+     *
+     * @param listener listener to be added
+     */
+    public void addBlockListener(BlockListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeBlockListener(BlockListener listener) {
+        listeners.remove(listener);
+    }
+
+    private void publish(BlockCommitEvent event, boolean committed) {
+        for (BlockListener listener : listeners) {
+            try {
+                if (committed) {
+                    listener.blockCommitted(event);
+                } else {
+                    listener.blockDisconnected(event);
                 }
+            } catch (RuntimeException e) {
+                // the block is already part of the chain
+                log.error("Block listener failed on block {}",
+                        event.getHeight(), e);
+            }
+        }
+    }
+
+    /**
+     * Validates the integrity of the blockchain. Only the blocks added since
+     * the last validation are checked.
+     *
+     * @return true if the block chain is valid or false otherwise
+     */
+    public Boolean isChainValid() {
+        return validate().isValid();
+    }
+
+    /**
+     * Validates the blocks added since the verified checkpoint. The blocks
+     * are checked in parallel, while the unspent transaction outputs are
+     * replayed in order, starting from the checkpoint's snapshot.
+     *
+     * @return the validation result with the first invalid block, if any
+     */
+    public ValidationResult validate() {
+        return validate(false);
+    }
 
+    /**
+     * Validates the blockchain. After every validation, the checkpoint moves
+     * to the last valid block, so that the next validation only checks the
+     * blocks added after it.
+     *
+     * @param full true to re-verify every block from the genesis block,
+     *             ignoring the checkpoint
+     * @return the validation result with the first invalid block, if any
+     */
+    public ValidationResult validate(boolean full) {
+        List<Node> nodes;
+        Transaction genesis;
+        synchronized (this) {
+            nodes = new ArrayList<>(blockchain);
+            genesis = genesisTransaction;
+        }
+
+        // the blocks before the checkpoint are only read if they're
+        // validated again
+        List<Block> blocks = new AbstractList<Block>() {
+            @Override
+            public Block get(int height) {
+                return getBlock(nodes.get(height));
+            }
+
+            @Override
+            public int size() {
+                return nodes.size();
             }
+        };
 
+        if (blocks.isEmpty()) {
+            return ValidationResult.valid();
         }
 
-        return true;
+        synchronized (checkpointLock) {
+            if (full || checkpoint == null || !checkpoint.isTipOf(blocks)) {
+                checkpoint = new Checkpoint(genesis);
+            }
+
+            ValidationResult result = ValidationResult.valid();
+            if (checkpoint.height < blocks.size()) {
+                result = validator.validate(blocks, checkpoint.height,
+                        checkpoint.utxos);
+                checkpoint.moveTo(blocks, result.isValid() ? blocks.size()
+                        : result.getFailedBlock());
+            }
+
+            return result;
+        }
     }
 
     public static void main(String[] args) {
         //Setup Bouncey castle as a Security Provider
         Security.addProvider(new BouncyCastleProvider());
 
+        NoobChain chain = new NoobChain();
+
         //Create wallets:
-        Wallet walletA = new Wallet();
-        Wallet walletB = new Wallet();
-        Wallet coinbase = new Wallet();
+        Wallet walletA = new Wallet(chain);
+        Wallet walletB = new Wallet(chain);
+        Wallet coinbase = new Wallet(chain);
 
         //create genesis transaction, which sends 100 NoobCoin to walletA
         Transaction txn =
                 new Transaction(coinbase.getPublicKey(), walletA.getPublicKey(),
-                        100f, null);
+                        Amount.coins(100), null);
 
         // sign the genesis transaction
         txn.generateSignature(coinbase.getPrivateKey());
@@ -174,25 +730,128 @@ public class NoobChain {
         txn.addTransactionOutput(outputTxn);
 
         log.info("Creating and Mining Genesis block... ");
-        NoobChain chain = new NoobChain();
         chain.addBlock(txn);
 
-        log.info("WalletA's balance is: " + walletA.getBalance());
+        log.info("WalletA's balance is: {}",
+                Amount.toString(walletA.getBalance()));
         log.info("WalletA is Attempting to send funds (40) to WalletB...");
-        chain.addBlock(walletA.sendFunds(walletB.getPublicKey(), 40f));
-        log.info("WalletA's balance is: {}", walletA.getBalance());
-        log.info("WalletB's balance is: {}", walletB.getBalance());
+        chain.addBlock(walletA.sendFunds(walletB.getPublicKey(),
+                Amount.coins(40)));
+        log.info("WalletA's balance is: {}",
+                Amount.toString(walletA.getBalance()));
+        log.info("WalletB's balance is: {}",
+                Amount.toString(walletB.getBalance()));
 
         log.info("WalletA Attempting to send more funds (1000) than it has...");
-        chain.addBlock(walletA.sendFunds(walletB.getPublicKey(), 1000f));
-        log.info("WalletA's balance is: {}", walletA.getBalance());
-        log.info("WalletB's balance is: {}", walletB.getBalance());
+        chain.addBlock(walletA.sendFunds(walletB.getPublicKey(),
+                Amount.coins(1000)));
+        log.info("WalletA's balance is: {}",
+                Amount.toString(walletA.getBalance()));
+        log.info("WalletB's balance is: {}",
+                Amount.toString(walletB.getBalance()));
 
         log.info("WalletB is Attempting to send funds (20) to WalletA...");
-        chain.addBlock(walletB.sendFunds(walletA.getPublicKey(), 20));
-        log.info("WalletA's balance is {}", walletA.getBalance());
-        log.info("WalletB's balance is {}", walletB.getBalance());
+        chain.addBlock(walletB.sendFunds(walletA.getPublicKey(),
+                Amount.coins(20)));
+        log.info("WalletA's balance is {}",
+                Amount.toString(walletA.getBalance()));
+        log.info("WalletB's balance is {}",
+                Amount.toString(walletB.getBalance()));
 
         log.info("Block Chain Valid: {}", chain.isChainValid());
     }
+
+    /**
+     * {@code Node} is a block of the block tree along with the cumulative
+     * work of the branch ending with it.
+     */
+    private static class Node {
+
+        private final String hash;
+
+        // null if the block is only kept in the block store
+        private final Block block;
+
+        private final Node parent;
+
+        private final int height;
+
+        private final BigInteger work;
+
+        // how the block changed the unspent outputs, null unless the block
+        // is part of the chain
+        private BlockUndo undo;
+
+        Node(Block block, Node parent, BigInteger blockWork) {
+            this(block.getHash(), block, parent, blockWork);
+        }
+
+        Node(String hash, Node parent, BigInteger blockWork) {
+            this(hash, null, parent, blockWork);
+        }
+
+        private Node(String hash, Block block, Node parent,
+                BigInteger blockWork) {
+            this.hash = hash;
+            this.block = block;
+            this.parent = parent;
+            this.height = parent == null ? 0 : parent.height + 1;
+            this.work = parent == null ? blockWork
+                    : parent.work.add(blockWork);
+        }
+
+        boolean descendsFrom(Node ancestor) {
+            for (Node node = this; node != null
+                    && node.height >= ancestor.height; node = node.parent) {
+                if (node == ancestor) {
+                    return true;
+                }
+            }
+
+            return false;
+        }
+    }
+
+    /**
+     * {@code Checkpoint} marks the blocks which have been verified along
+     * with a snapshot of the unspent transaction outputs after them.
+     */
+    private static class Checkpoint {
+
+        // number of verified blocks, including the genesis block
+        private int height;
+
+        private String tipHash;
+
+        private final UtxoSet utxos = new UtxoSet();
+
+        Checkpoint(Transaction genesisTransaction) {
+            // the genesis block is trusted
+            height = 1;
+            utxos.add(genesisTransaction.getOutputs().get(0));
+        }
+
+        Checkpoint(UtxoSnapshot snapshot) {
+            // the blocks of the snapshot are trusted
+            height = snapshot.getHeight() + 1;
+            tipHash = snapshot.getBlockHash();
+            utxos.apply(Collections.emptyList(), snapshot.getOutputs());
+        }
+
+        /**
+         * Checks if the verified blocks are still part of a chain.
+         *
+         * @param blocks blocks of the chain
+         * @return true if the chain still contains the last verified block
+         */
+        boolean isTipOf(List<Block> blocks) {
+            return tipHash == null || (height <= blocks.size()
+                    && tipHash.equals(blocks.get(height - 1).getHash()));
+        }
+
+        void moveTo(List<Block> blocks, int verifiedHeight) {
+            height = verifiedHeight;
+            tipHash = blocks.get(height - 1).getHash();
+        }
+    }
 }
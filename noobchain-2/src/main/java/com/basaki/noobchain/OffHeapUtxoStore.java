@@ -0,0 +1,702 @@
+package com.basaki.noobchain;
+
+import java.nio.ByteBuffer;
+import java.security.PublicKey;
+import java.util.AbstractCollection;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.ConcurrentModificationException;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.NoSuchElementException;
+import java.util.TreeSet;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * {@code OffHeapUtxoStore} is a {@code UtxoStore} which keeps the unspent
+ * outputs outside of the Java heap, for output sets too large to be held as
+ * objects. Every output is a fixed-width record in direct byte buffers
+ * <pre>
+ * [byte state][byte flags][2 bytes unused][int owner][long value]
+ * [int previous][int next][32 byte id][32 byte parent transaction id]
+ * </pre>
+ * and the records form a hash table with open addressing, probed linearly
+ * from the raw bytes of the output id. The public key of an owner is kept
+ * once on the heap along with the owner's balance, and the records refer to
+ * it by number. An owner is dropped with its last output and its number is
+ * given to the next new owner, so the owners on the heap don't outgrow the
+ * unspent outputs. The outputs of an owner are linked in the order they were
+ * added through the previous and next fields. A spent output leaves a
+ * tombstone until the table is rebuilt, so records never move in between.
+ * <p>
+ * Outputs are decoded into {@code TransactionOutput} objects only when they
+ * are read, so two reads of the same output return different objects. The
+ * store is thread-safe: reads run in parallel and wait while a transaction
+ * is applied. The buffers count against the JVM's direct memory limit,
+ * {@code -XX:MaxDirectMemorySize}.
+ */
+public class OffHeapUtxoStore implements UtxoStore {
+
+    public static final int DEFAULT_CAPACITY = 1 << 16;
+
+    private static final int RECORD_SIZE = 88;
+
+    // offsets of the record fields
+    private static final int STATE = 0;
+    private static final int FLAGS = 1;
+    private static final int OWNER = 4;
+    private static final int VALUE = 8;
+    private static final int PREVIOUS = 16;
+    private static final int NEXT = 20;
+    private static final int ID = 24;
+    private static final int PARENT = ID + Sha256.HASH_LENGTH;
+
+    private static final byte EMPTY = 0;
+    private static final byte USED = 1;
+    private static final byte DELETED = 2;
+
+    // the parent transaction id isn't a hash and is kept on the heap
+    private static final byte TEXT_PARENT = 1;
+
+    private static final int NONE = -1;
+
+    private static final int MAX_PAGE_SLOTS = 1 << 16;
+
+    private static final int MAX_SLOTS = 1 << 30;
+
+    private Table table;
+
+    // owners by address and by number
+    private final Map<Address, Owner> owners = new HashMap<>();
+
+    private final List<Owner> ownersByNumber = new ArrayList<>();
+
+    // numbers of the dropped owners, reused before new ones are taken
+    private final Deque<Integer> freeNumbers = new ArrayDeque<>();
+
+    // parent transaction ids which aren't hashes, by output id
+    private final Map<String, String> textParents = new HashMap<>();
+
+    // number of applied transactions, ends the iteration of values()
+    private int modCount;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    public OffHeapUtxoStore() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates a store sized for a number of outputs. The store grows past
+     * it by rebuilding the table at twice the size.
+     *
+     * @param initialCapacity number of outputs held without growing
+     */
+    public OffHeapUtxoStore(int initialCapacity) {
+        table = new Table(tableSize(initialCapacity));
+    }
+
+    @Override
+    public TransactionOutput get(String id) {
+        lock.readLock().lock();
+        try {
+            int slot = find(id);
+            return slot == NONE ? null : decode(slot);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean contains(String id) {
+        lock.readLock().lock();
+        try {
+            return find(id) != NONE;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return table.used;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns a view of the unspent outputs which decodes them while it's
+     * iterated. The iteration fails with a
+     * {@code ConcurrentModificationException} once a transaction is applied.
+     */
+    @Override
+    public Collection<TransactionOutput> values() {
+        return new AbstractCollection<TransactionOutput>() {
+            @Override
+            public Iterator<TransactionOutput> iterator() {
+                return new Outputs();
+            }
+
+            @Override
+            public int size() {
+                return OffHeapUtxoStore.this.size();
+            }
+        };
+    }
+
+    @Override
+    public void add(TransactionOutput output) {
+        apply(Collections.emptyList(), Collections.singletonList(output));
+    }
+
+    /**
+     * Applies a transaction. The ids of the created outputs have to be
+     * SHA-256 hashes.
+     *
+     * @throws IllegalArgumentException if the id of a created output isn't a
+     *                                  hash
+     */
+    @Override
+    public List<TransactionOutput> apply(Collection<String> spentIds,
+            Collection<TransactionOutput> created) {
+        for (TransactionOutput output : created) {
+            if (!BlockCodec.isHash(output.getId())) {
+                throw new IllegalArgumentException(
+                        "Output id isn't a hash: " + output.getId());
+            }
+        }
+
+        lock.writeLock().lock();
+        try {
+            ensureCapacity(created.size());
+
+            int[] slots = new int[spentIds.size()];
+            int count = 0;
+            for (String id : spentIds) {
+                int slot = find(id);
+                if (slot == NONE || indexOf(slots, count, slot) >= 0) {
+                    return null;
+                }
+                slots[count++] = slot;
+            }
+
+            List<TransactionOutput> spent = new ArrayList<>(count);
+            for (int slot : slots) {
+                spent.add(decode(slot));
+                remove(slot);
+            }
+            for (TransactionOutput output : created) {
+                insert(output);
+            }
+            modCount++;
+
+            return spent;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public long getBalance(Address owner) {
+        lock.readLock().lock();
+        try {
+            Owner entry = owners.get(owner);
+            return entry == null ? 0 : entry.balance;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Collection<TransactionOutput> getOutputs(Address owner) {
+        lock.readLock().lock();
+        try {
+            List<TransactionOutput> outputs = new ArrayList<>();
+            Owner entry = owners.get(owner);
+            if (entry != null) {
+                for (int slot = entry.head; slot != NONE;
+                        slot = table.getInt(slot, NEXT)) {
+                    outputs.add(decode(slot));
+                }
+            }
+
+            return outputs;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Selects outputs of an owner. The owner's outputs are decoded and
+     * sorted by value for every selection, as the store keeps no order by
+     * value.
+     */
+    @Override
+    public List<TransactionOutput> selectOutputs(Address owner, long value,
+            CoinSelector selector) {
+        lock.readLock().lock();
+        try {
+            Owner entry = owners.get(owner);
+            if (entry == null || entry.count == 0) {
+                return null;
+            }
+
+            NavigableSet<TransactionOutput> byValue =
+                    new TreeSet<>(CoinSelector.BY_VALUE);
+            for (int slot = entry.head; slot != NONE;
+                    slot = table.getInt(slot, NEXT)) {
+                byValue.add(decode(slot));
+            }
+
+            return selector.select(
+                    Collections.unmodifiableNavigableSet(byValue), value);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private int find(String id) {
+        return BlockCodec.isHash(id) ? table.find(toLongs(id)) : NONE;
+    }
+
+    private TransactionOutput decode(int slot) {
+        String id = table.getHash(slot, ID);
+        String parent = (table.getByte(slot, FLAGS) & TEXT_PARENT) != 0
+                ? textParents.get(id) : table.getHash(slot, PARENT);
+        Owner owner = ownersByNumber.get(table.getInt(slot, OWNER));
+
+        return new TransactionOutput(id, owner.key,
+                table.getLong(slot, VALUE), parent);
+    }
+
+    /**
+     * Adds an output at the end of its owner's list. An existing output
+     * with the same id is replaced.
+     */
+    private void insert(TransactionOutput output) {
+        long[] id = toLongs(output.getId());
+        int existing = table.find(id);
+        if (existing != NONE) {
+            remove(existing);
+        }
+
+        Owner owner = owners.get(output.getOwner());
+        if (owner == null) {
+            owner = addOwner(output.getOwner(), output.getRecipient());
+        }
+
+        int slot = table.claim(id);
+        String parent = output.getParentTransactionId();
+        if (parent != null && BlockCodec.isHash(parent)) {
+            table.putByte(slot, FLAGS, (byte) 0);
+            table.putLongs(slot, PARENT, toLongs(parent));
+        } else {
+            table.putByte(slot, FLAGS, TEXT_PARENT);
+            textParents.put(output.getId(), parent);
+        }
+        table.putInt(slot, OWNER, owner.number);
+        table.putLong(slot, VALUE, output.getValue());
+
+        link(owner, slot);
+        owner.count++;
+        owner.balance += output.getValue();
+    }
+
+    private void remove(int slot) {
+        Owner owner = ownersByNumber.get(table.getInt(slot, OWNER));
+        int previous = table.getInt(slot, PREVIOUS);
+        int next = table.getInt(slot, NEXT);
+        if (previous == NONE) {
+            owner.head = next;
+        } else {
+            table.putInt(previous, NEXT, next);
+        }
+        if (next == NONE) {
+            owner.tail = previous;
+        } else {
+            table.putInt(next, PREVIOUS, previous);
+        }
+
+        if ((table.getByte(slot, FLAGS) & TEXT_PARENT) != 0) {
+            textParents.remove(table.getHash(slot, ID));
+        }
+
+        owner.count--;
+        owner.balance -= table.getLong(slot, VALUE);
+        table.release(slot);
+        if (owner.count == 0) {
+            owners.remove(owner.address);
+            ownersByNumber.set(owner.number, null);
+            freeNumbers.push(owner.number);
+        }
+    }
+
+    private Owner addOwner(Address address, PublicKey key) {
+        Owner owner;
+        if (freeNumbers.isEmpty()) {
+            owner = new Owner(ownersByNumber.size(), address, key);
+            ownersByNumber.add(owner);
+        } else {
+            owner = new Owner(freeNumbers.pop(), address, key);
+            ownersByNumber.set(owner.number, owner);
+        }
+        owners.put(address, owner);
+
+        return owner;
+    }
+
+    /**
+     * Returns the number of owners kept on the heap.
+     *
+     * @return the number of owners with unspent outputs
+     */
+    int getOwnerCount() {
+        lock.readLock().lock();
+        try {
+            return owners.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void link(Owner owner, int slot) {
+        table.putInt(slot, PREVIOUS, owner.tail);
+        table.putInt(slot, NEXT, NONE);
+        if (owner.tail == NONE) {
+            owner.head = slot;
+        } else {
+            table.putInt(owner.tail, NEXT, slot);
+        }
+        owner.tail = slot;
+    }
+
+    /**
+     * Rebuilds the table if the outputs to be added would fill more than
+     * three quarters of it, counting the tombstones. The table doubles if
+     * the outputs alone fill more than half of it.
+     */
+    private void ensureCapacity(int added) {
+        long needed = (long) table.used + table.deleted + added;
+        if (needed * 4 < (long) table.capacity * 3) {
+            return;
+        }
+
+        Table old = table;
+        table = new Table(tableSize((long) old.used + added));
+
+        // copy every owner's outputs in order, which relinks them
+        byte[] record = new byte[RECORD_SIZE];
+        for (Owner owner : owners.values()) {
+            int slot = owner.head;
+            owner.head = NONE;
+            owner.tail = NONE;
+            while (slot != NONE) {
+                old.getRecord(slot, record);
+                int copy = table.claim(old.getLongs(slot, ID));
+                table.putRecord(copy, record);
+                link(owner, copy);
+                slot = old.getInt(slot, NEXT);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of slots which hold a number of outputs at half
+     * the table.
+     */
+    private static int tableSize(long outputs) {
+        long size = MAX_PAGE_SLOTS >> 6;
+        while (size < outputs * 2) {
+            size <<= 1;
+        }
+        if (size > MAX_SLOTS) {
+            throw new IllegalStateException("Too many outputs: " + outputs);
+        }
+
+        return (int) size;
+    }
+
+    private static long[] toLongs(String hash) {
+        ByteBuffer buffer = ByteBuffer.wrap(StringUtil.toBytes(hash));
+        long[] longs = new long[Sha256.HASH_LENGTH / 8];
+        for (int i = 0; i < longs.length; i++) {
+            longs[i] = buffer.getLong();
+        }
+
+        return longs;
+    }
+
+    private static int indexOf(int[] slots, int count, int slot) {
+        for (int i = 0; i < count; i++) {
+            if (slots[i] == slot) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * {@code Owner} is an owner of outputs along with the first and last of
+     * its outputs in the table.
+     */
+    private static class Owner {
+
+        private final int number;
+
+        private final Address address;
+
+        private final PublicKey key;
+
+        private int count;
+
+        private long balance;
+
+        private int head = NONE;
+
+        private int tail = NONE;
+
+        Owner(int number, Address address, PublicKey key) {
+            this.number = number;
+            this.address = address;
+            this.key = key;
+        }
+    }
+
+    /**
+     * {@code Table} is the hash table of records, split into pages of direct
+     * buffers so that it can grow past the size of a single buffer.
+     */
+    private static class Table {
+
+        private final ByteBuffer[] pages;
+
+        // number of slots, a power of 2
+        private final int capacity;
+
+        private final int pageShift;
+
+        private final int pageMask;
+
+        private int used;
+
+        private int deleted;
+
+        Table(int capacity) {
+            this.capacity = capacity;
+            int pageSlots = Math.min(capacity, MAX_PAGE_SLOTS);
+            pageShift = Integer.numberOfTrailingZeros(pageSlots);
+            pageMask = pageSlots - 1;
+
+            // direct buffers start zeroed, i.e., every slot is empty
+            pages = new ByteBuffer[capacity / pageSlots];
+            for (int i = 0; i < pages.length; i++) {
+                pages[i] = ByteBuffer.allocateDirect(pageSlots * RECORD_SIZE);
+            }
+        }
+
+        /**
+         * Finds the slot of an output.
+         *
+         * @param id id of the output
+         * @return the slot or {@code NONE} if the output isn't in the table
+         */
+        int find(long[] id) {
+            for (int slot = home(id); ; slot = (slot + 1) & (capacity - 1)) {
+                byte state = getByte(slot, STATE);
+                if (state == EMPTY) {
+                    return NONE;
+                }
+                if (state == USED && matches(slot, id)) {
+                    return slot;
+                }
+            }
+        }
+
+        /**
+         * Takes the first free slot on the probe sequence of an id, which
+         * mustn't be in the table.
+         *
+         * @param id id of the output
+         * @return the slot with the id set
+         */
+        int claim(long[] id) {
+            int slot = home(id);
+            while (getByte(slot, STATE) == USED) {
+                slot = (slot + 1) & (capacity - 1);
+            }
+
+            if (getByte(slot, STATE) == DELETED) {
+                deleted--;
+            }
+            used++;
+            putByte(slot, STATE, USED);
+            putLongs(slot, ID, id);
+
+            return slot;
+        }
+
+        void release(int slot) {
+            putByte(slot, STATE, DELETED);
+            used--;
+            deleted++;
+        }
+
+        private int home(long[] id) {
+            // the id is a hash, any of its bits are evenly spread
+            return (int) (id[0] ^ (id[0] >>> 32)) & (capacity - 1);
+        }
+
+        private boolean matches(int slot, long[] id) {
+            for (int i = 0; i < id.length; i++) {
+                if (getLong(slot, ID + i * 8) != id[i]) {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+
+        private ByteBuffer page(int slot) {
+            return pages[slot >>> pageShift];
+        }
+
+        private int offset(int slot, int field) {
+            return (slot & pageMask) * RECORD_SIZE + field;
+        }
+
+        byte getByte(int slot, int field) {
+            return page(slot).get(offset(slot, field));
+        }
+
+        void putByte(int slot, int field, byte value) {
+            page(slot).put(offset(slot, field), value);
+        }
+
+        int getInt(int slot, int field) {
+            return page(slot).getInt(offset(slot, field));
+        }
+
+        void putInt(int slot, int field, int value) {
+            page(slot).putInt(offset(slot, field), value);
+        }
+
+        long getLong(int slot, int field) {
+            return page(slot).getLong(offset(slot, field));
+        }
+
+        void putLong(int slot, int field, long value) {
+            page(slot).putLong(offset(slot, field), value);
+        }
+
+        long[] getLongs(int slot, int field) {
+            long[] longs = new long[Sha256.HASH_LENGTH / 8];
+            for (int i = 0; i < longs.length; i++) {
+                longs[i] = getLong(slot, field + i * 8);
+            }
+
+            return longs;
+        }
+
+        void putLongs(int slot, int field, long[] longs) {
+            for (int i = 0; i < longs.length; i++) {
+                putLong(slot, field + i * 8, longs[i]);
+            }
+        }
+
+        String getHash(int slot, int field) {
+            ByteBuffer hash = ByteBuffer.allocate(Sha256.HASH_LENGTH);
+            for (long value : getLongs(slot, field)) {
+                hash.putLong(value);
+            }
+
+            return StringUtil.toString(hash.array());
+        }
+
+        void getRecord(int slot, byte[] record) {
+            ByteBuffer buffer = page(slot).duplicate();
+            buffer.position(offset(slot, 0));
+            buffer.get(record);
+        }
+
+        void putRecord(int slot, byte[] record) {
+            ByteBuffer buffer = page(slot).duplicate();
+            buffer.position(offset(slot, 0));
+            buffer.put(record);
+        }
+    }
+
+    /**
+     * {@code Outputs} iterates the used slots of the table.
+     */
+    private class Outputs implements Iterator<TransactionOutput> {
+
+        private final int expectedModCount;
+
+        // next slot to be looked at
+        private int position;
+
+        private int found = NONE;
+
+        Outputs() {
+            lock.readLock().lock();
+            try {
+                expectedModCount = modCount;
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            lock.readLock().lock();
+            try {
+                checkModCount();
+                while (found == NONE && position < table.capacity) {
+                    if (table.getByte(position, STATE) == USED) {
+                        found = position;
+                    }
+                    position++;
+                }
+
+                return found != NONE;
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        @Override
+        public TransactionOutput next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+
+            lock.readLock().lock();
+            try {
+                checkModCount();
+                TransactionOutput output = decode(found);
+                found = NONE;
+
+                return output;
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        private void checkModCount() {
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+        }
+    }
+}
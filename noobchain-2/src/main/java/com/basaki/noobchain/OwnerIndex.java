@@ -0,0 +1,117 @@
+package com.basaki.noobchain;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * {@code OwnerIndex} indexes unspent outputs by the address of their owner,
+ * along with a running balance per owner. The outputs of an owner are kept
+ * in the order they were added and sorted by value for the coin selection.
+ * An index isn't thread-safe for a single owner, a store which is used
+ * concurrently has to guard every owner itself.
+ */
+class OwnerIndex {
+
+    private final Map<Address, Owner> owners;
+
+    private OwnerIndex(Map<Address, Owner> owners) {
+        this.owners = owners;
+    }
+
+    /**
+     * Creates an index which is used by one thread at a time.
+     *
+     * @return a new index
+     */
+    static OwnerIndex create() {
+        return new OwnerIndex(new HashMap<>());
+    }
+
+    /**
+     * Creates an index whose owners can be updated concurrently, as long as
+     * an owner isn't updated by two threads at the same time.
+     *
+     * @return a new index
+     */
+    static OwnerIndex createConcurrent() {
+        return new OwnerIndex(new ConcurrentHashMap<>());
+    }
+
+    void add(TransactionOutput output) {
+        Owner owner = owners.computeIfAbsent(output.getOwner(),
+                k -> new Owner());
+        owner.outputs.put(output.getId(), output);
+        owner.byValue.add(output);
+        owner.balance += output.getValue();
+    }
+
+    void remove(TransactionOutput output) {
+        Owner owner = owners.get(output.getOwner());
+        if (owner == null || owner.outputs.remove(output.getId()) == null) {
+            return;
+        }
+        owner.byValue.remove(output);
+
+        owner.balance -= output.getValue();
+        if (owner.outputs.isEmpty()) {
+            owners.remove(output.getOwner());
+        }
+    }
+
+    void clear() {
+        owners.clear();
+    }
+
+    long getBalance(Address owner) {
+        Owner entry = owners.get(owner);
+        return entry == null ? 0 : entry.balance;
+    }
+
+    /**
+     * Returns the unspent outputs owned by an address, in the order they
+     * were added.
+     *
+     * @param owner address of the owner
+     * @return a read-only view of the owner's unspent outputs
+     */
+    Collection<TransactionOutput> getOutputs(Address owner) {
+        Owner entry = owners.get(owner);
+        return entry == null ? Collections.emptyList()
+                : Collections.unmodifiableCollection(entry.outputs.values());
+    }
+
+    /**
+     * Selects unspent outputs of an owner, the selector gets a read-only
+     * view of the owner's outputs sorted by value.
+     *
+     * @param owner    address of the owner
+     * @param value    amount to be sent in the smallest unit
+     * @param selector chooses the outputs
+     * @return the selected outputs or null if the owner can't send the
+     * amount
+     */
+    List<TransactionOutput> selectOutputs(Address owner, long value,
+            CoinSelector selector) {
+        Owner entry = owners.get(owner);
+        return entry == null ? null : selector.select(
+                Collections.unmodifiableNavigableSet(entry.byValue), value);
+    }
+
+    private static class Owner {
+
+        private final Map<String, TransactionOutput> outputs =
+                new LinkedHashMap<>();
+
+        private final NavigableSet<TransactionOutput> byValue =
+                new TreeSet<>(CoinSelector.BY_VALUE);
+
+        private long balance;
+    }
+}
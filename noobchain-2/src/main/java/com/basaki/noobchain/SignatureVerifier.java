@@ -0,0 +1,233 @@
+package com.basaki.noobchain;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.stream.IntStream;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * {@code SignatureVerifier} verifies transaction signatures. Batches of
+ * transactions are verified in parallel on a {@code ForkJoinPool}. Every
+ * signature which has been verified is remembered in a bounded cache, so a
+ * transaction checked when its block was built isn't checked again when the
+ * chain is validated.
+ * <p>
+ * A cache entry is keyed by the signature together with a digest of the
+ * signed data, not only by the transaction id, so a transaction which was
+ * altered after it was verified is verified again. The cache is split into
+ * two generations of concurrent sets, so lookups from many threads don't
+ * contend on a lock. A hit in the older generation moves the signature to
+ * the newer one, and the older generation is dropped as a whole once the
+ * newer one is full, which approximates evicting the least recently used
+ * signatures.
+ */
+@SuppressWarnings({"squid:S00112"})
+@Slf4j
+public class SignatureVerifier {
+
+    private static final int DEFAULT_CACHE_SIZE = 100_000;
+
+    // smaller batches are verified on the calling thread
+    private static final int PARALLEL_THRESHOLD = 4;
+
+    private final ForkJoinPool pool;
+
+    // maximum number of signatures in a generation
+    private final int generationSize;
+
+    private volatile Set<CacheKey> recent = ConcurrentHashMap.newKeySet();
+
+    private volatile Set<CacheKey> older = ConcurrentHashMap.newKeySet();
+
+    private final Object rotationLock = new Object();
+
+    /**
+     * Creates a verifier which runs on the common fork join pool.
+     */
+    public SignatureVerifier() {
+        this(ForkJoinPool.commonPool(), DEFAULT_CACHE_SIZE);
+    }
+
+    /**
+     * Creates a verifier.
+     *
+     * @param pool      the pool used to verify batches
+     * @param cacheSize maximum number of verified signatures remembered
+     */
+    public SignatureVerifier(ForkJoinPool pool, int cacheSize) {
+        this.pool = pool;
+        this.generationSize = Math.max(1, cacheSize / 2);
+    }
+
+    /**
+     * Returns the verifier shared by the transactions and chains which aren't
+     * given their own.
+     *
+     * @return the default verifier
+     */
+    public static SignatureVerifier getDefault() {
+        return DefaultHolder.INSTANCE;
+    }
+
+    /**
+     * Verifies the signature of a transaction, unless the same signature of
+     * the same data has already been verified. A signature which can't be
+     * decoded, e.g., malformed DER, is invalid.
+     *
+     * @param transaction transaction to be verified
+     * @return true if the signature is valid
+     */
+    public boolean verify(Transaction transaction) {
+        byte[] signature = transaction.getSignature();
+        if (signature == null) {
+            return false;
+        }
+
+        boolean valid;
+        CacheKey key;
+        try {
+            // the hash of the signed data is the transaction's hash
+            byte[] data = transaction.getSignatureData();
+            key = new CacheKey(transaction.getHash(), signature);
+            if (isVerified(key)) {
+                return true;
+            }
+
+            valid = StringUtil.verifyECDSASig(transaction.getSender(), data,
+                    signature);
+        } catch (RuntimeException e) {
+            log.debug("Signature of transaction {} can't be verified.",
+                    transaction.getTransactionId(), e);
+            return false;
+        }
+        if (valid) {
+            remember(key);
+        }
+
+        return valid;
+    }
+
+    /**
+     * Verifies the signatures of a batch of transactions in parallel.
+     *
+     * @param transactions transactions to be verified
+     * @return the index of the first transaction with an invalid signature
+     * or -1 if all the signatures are valid
+     */
+    public int verifyAll(List<Transaction> transactions) {
+        if (transactions.size() < PARALLEL_THRESHOLD) {
+            for (int i = 0; i < transactions.size(); i++) {
+                if (!verify(transactions.get(i))) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        if (ForkJoinTask.inForkJoinPool()) {
+            // already running as part of a parallel task, e.g., a chain
+            // validation, which shares its pool with the batch
+            return firstInvalid(transactions);
+        }
+
+        try {
+            return pool.submit(() -> firstInvalid(transactions)).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    /**
+     * Returns the number of verified signatures remembered.
+     *
+     * @return the number of cached signatures
+     */
+    int getCacheSize() {
+        return recent.size() + older.size();
+    }
+
+    private boolean isVerified(CacheKey key) {
+        if (recent.contains(key)) {
+            return true;
+        }
+        if (older.contains(key)) {
+            remember(key);
+            return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Adds a signature to the newer generation, which becomes the older one
+     * once it's full.
+     */
+    private void remember(CacheKey key) {
+        Set<CacheKey> generation = recent;
+        generation.add(key);
+        if (generation.size() >= generationSize) {
+            synchronized (rotationLock) {
+                if (recent == generation) {
+                    older = generation;
+                    recent = ConcurrentHashMap.newKeySet();
+                }
+            }
+        }
+    }
+
+    private int firstInvalid(List<Transaction> transactions) {
+        return IntStream.range(0, transactions.size())
+                .parallel()
+                .filter(i -> !verify(transactions.get(i)))
+                .findFirst()
+                .orElse(-1);
+    }
+
+    private static class CacheKey {
+
+        private final byte[] dataHash;
+
+        private final byte[] signature;
+
+        private final int hashCode;
+
+        CacheKey(byte[] dataHash, byte[] signature) {
+            this.dataHash = dataHash;
+            this.signature = signature.clone();
+            this.hashCode = 31 * Arrays.hashCode(dataHash)
+                    + Arrays.hashCode(signature);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof CacheKey)) {
+                return false;
+            }
+
+            CacheKey other = (CacheKey) o;
+            return Arrays.equals(dataHash, other.dataHash)
+                    && Arrays.equals(signature, other.signature);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+
+    private static class DefaultHolder {
+        private static final SignatureVerifier INSTANCE =
+                new SignatureVerifier();
+    }
+}
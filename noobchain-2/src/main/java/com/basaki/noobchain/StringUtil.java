@@ -1,11 +1,12 @@
 package com.basaki.noobchain;
 
+import java.nio.charset.StandardCharsets;
 import java.security.Key;
 import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.security.PrivateKey;
 import java.security.PublicKey;
 import java.security.Signature;
-import java.util.ArrayList;
 import java.util.Base64;
 import java.util.List;
 
@@ -17,6 +18,18 @@ public class StringUtil {
 
     private static final int INT_BIT_MASK = 0xff;
 
+    private static final int NIBBLE_BIT_MASK = 0x0f;
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    // a SHA-256 digest per thread, avoids a provider lookup for every hash
+    private static final ThreadLocal<MessageDigest> SHA_256 =
+            ThreadLocal.withInitial(StringUtil::newSha256Digest);
+
+    // an ECDSA signature per thread, initialized again for every use
+    private static final ThreadLocal<Signature> ECDSA =
+            ThreadLocal.withInitial(StringUtil::newECDSASignature);
+
     /**
      * Creates a SHA-256 hash of the input string.
      *
@@ -24,14 +37,22 @@ public class StringUtil {
      * @return a hexadecimal string representation of a SHA-256 hash
      */
     public static String applySha256(String input) {
-        try {
-            MessageDigest digest = MessageDigest.getInstance("SHA-256");
-            //Applies sha256 to our input,
-            byte[] hash = digest.digest(input.getBytes("UTF-8"));
-            return toString(hash);
-        } catch (Exception e) {
-            throw new RuntimeException(e);
-        }
+        MessageDigest digest = getSha256Digest();
+        //Applies sha256 to our input,
+        byte[] hash = digest.digest(input.getBytes(StandardCharsets.UTF_8));
+        return toString(hash);
+    }
+
+    /**
+     * Returns the SHA-256 digest of the current thread. The digest is reset
+     * and shouldn't be shared with other threads.
+     *
+     * @return a SHA-256 message digest
+     */
+    public static MessageDigest getSha256Digest() {
+        MessageDigest digest = SHA_256.get();
+        digest.reset();
+        return digest;
     }
 
     /**
@@ -41,42 +62,72 @@ public class StringUtil {
      * @return a hexdecimal string
      */
     public static String toString(byte[] bytes) {
-        StringBuilder hexString =
-                new StringBuilder(); // This will contain hash as hexidecimal
+        char[] hex = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            int b = INT_BIT_MASK & bytes[i];
+            hex[i * 2] = HEX_DIGITS[b >>> 4];
+            hex[i * 2 + 1] = HEX_DIGITS[b & NIBBLE_BIT_MASK];
+        }
+        return new String(hex);
+    }
+
+    /**
+     * Converts a hexdecimal string to a byte array.
+     *
+     * @param hex a hexdecimal string with an even number of digits
+     * @return the byte array
+     */
+    public static byte[] toBytes(String hex) {
+        byte[] bytes = new byte[hex.length() / 2];
         for (int i = 0; i < bytes.length; i++) {
-            String hex = Integer.toHexString(INT_BIT_MASK & bytes[i]);
-            if (hex.length() == 1) hexString.append('0');
-            hexString.append(hex);
+            bytes[i] = (byte) ((Character.digit(hex.charAt(i * 2), 16) << 4)
+                    | Character.digit(hex.charAt(i * 2 + 1), 16));
         }
-        return hexString.toString();
+        return bytes;
     }
 
     /**
-     * Creates a signature from the private key and the input string.
+     * Checks if a raw hash starts with a number of zero hexadecimal digits,
+     * i.e., if its hexadecimal string representation starts with as many 0's.
+     *
+     * @param hash       the raw hash
+     * @param difficulty number of leading zero hexadecimal digits required,
+     *                   at most twice the length of the hash
+     * @return true if the hash has the required number of leading zeros
+     */
+    public static boolean hasLeadingZeros(byte[] hash, int difficulty) {
+        int fullBytes = difficulty >>> 1;
+        for (int i = 0; i < fullBytes; i++) {
+            if (hash[i] != 0) {
+                return false;
+            }
+        }
+
+        return (difficulty & 1) == 0
+                || (hash[fullBytes] & (NIBBLE_BIT_MASK << 4)) == 0;
+    }
+
+    /**
+     * Creates a signature of raw data.
      *
      * @param privateKey the private key used in signing
-     * @param input      the input string to be used in the signature
+     * @param data       the data to be signed
      * @return the ECDSA signature
      */
-    public static byte[] applyECDSASig(PrivateKey privateKey, String input) {
-        Signature dsa;
-        byte[] output = new byte[0];
+    public static byte[] applyECDSASig(PrivateKey privateKey, byte[] data) {
         try {
-            dsa = Signature.getInstance("ECDSA", "BC");
+            Signature dsa = ECDSA.get();
             dsa.initSign(privateKey);
-            byte[] strByte = input.getBytes();
-            dsa.update(strByte);
-            byte[] realSig = dsa.sign();
-            output = realSig;
+            dsa.update(data);
+            return dsa.sign();
         } catch (Exception e) {
             throw new RuntimeException(e);
         }
-        return output;
     }
 
 
     /**
-     * Verfies a signature.
+     * Verfies a signature of raw data.
      *
      * @param publicKey the corresponding public key of the private key used to
      *                  create the signature
@@ -84,12 +135,12 @@ public class StringUtil {
      * @param signature the signature to be verified
      * @return true if the signature is valid
      */
-    public static boolean verifyECDSASig(PublicKey publicKey, String data,
+    public static boolean verifyECDSASig(PublicKey publicKey, byte[] data,
             byte[] signature) {
         try {
-            Signature ecdsaVerify = Signature.getInstance("ECDSA", "BC");
+            Signature ecdsaVerify = ECDSA.get();
             ecdsaVerify.initVerify(publicKey);
-            ecdsaVerify.update(data.getBytes());
+            ecdsaVerify.update(data);
             return ecdsaVerify.verify(signature);
         } catch (Exception e) {
             throw new RuntimeException(e);
@@ -106,30 +157,27 @@ public class StringUtil {
      * remaining single hash is called the {@code Merkle Root}.
      *
      * @param transactions all transactions within a block
-     * @return a Merkle root
+     * @return a Merkle root, an empty string if there are no transactions
+     * @see MerkleTree
      */
     public static String getMerkleRoot(List<Transaction> transactions) {
-        int count = transactions.size();
+        return new MerkleTree(transactions).getRootHash();
+    }
 
-        List<String> previousTreeLayer = new ArrayList<>();
-        for (Transaction transaction : transactions) {
-            previousTreeLayer.add(transaction.getTransactionId());
+    private static MessageDigest newSha256Digest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
         }
+    }
 
-        List<String> treeLayer = previousTreeLayer;
-
-        while (count > 1) {
-            treeLayer = new ArrayList<>();
-            for (int i = 1; i < previousTreeLayer.size(); i += 2) {
-                treeLayer.add(applySha256(previousTreeLayer.get(i - 1)
-                        + previousTreeLayer.get(i)));
-            }
-
-            count = treeLayer.size();
-            previousTreeLayer = treeLayer;
+    private static Signature newECDSASignature() {
+        try {
+            return Signature.getInstance("ECDSA", "BC");
+        } catch (Exception e) {
+            throw new RuntimeException(e);
         }
-
-        return (treeLayer.size() == 1) ? treeLayer.get(0) : "";
     }
 
     private StringUtil() {
@@ -9,7 +9,7 @@ import lombok.Getter;
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
 
-@SuppressWarnings({"squid:S00112", "squid:S2696"})
+@SuppressWarnings({"squid:S00112"})
 @Slf4j
 public class Transaction {
 
@@ -26,8 +26,19 @@ public class Transaction {
     @Getter
     private PublicKey recipient;
 
+    // amount of noob coins in the smallest unit, see Amount
     @Getter
-    private float value;
+    private long value;
+
+    // amount returned to the sender in the smallest unit, the inputs have
+    // to add up to the value and the change
+    @Getter
+    private long change;
+
+    // addresses of the sender and the recipient, created on first use
+    private transient Address senderAddress;
+
+    private transient Address recipientAddress;
 
     //  prevents anybody else from spending funds in the wallet
     private byte[] signature;
@@ -36,15 +47,58 @@ public class Transaction {
 
     private List<TransactionOutput> outputs = new ArrayList<>();
 
-    // a rough count of how many transactions have been generated
-    private static int sequence = 0;
+    // canonical encoding of the signed fields and its hash, created on first
+    // use, the signed fields never change
+    private transient byte[] preimage;
 
-    public Transaction(PublicKey from, PublicKey to, float value,
+    private transient byte[] hash;
+
+    public Transaction(PublicKey from, PublicKey to, long value,
+            List<TransactionInput> inputs) {
+        this(from, to, value, 0, inputs);
+    }
+
+    /**
+     * Creates a transaction which returns change to the sender. The change
+     * is signed along with the value, so the signature fixes both outputs
+     * of the transaction.
+     *
+     * @param from   sender's public key
+     * @param to     recipient's public key
+     * @param value  amount of noob coins in the smallest unit
+     * @param change amount returned to the sender in the smallest unit
+     * @param inputs inputs of the transaction, they have to add up to the
+     *               value and the change
+     */
+    public Transaction(PublicKey from, PublicKey to, long value, long change,
             List<TransactionInput> inputs) {
         this.sender = from;
         this.recipient = to;
         this.value = value;
-        this.inputs = inputs;
+        this.change = change;
+        this.inputs = inputs == null ? null : new ArrayList<>(inputs);
+    }
+
+    /**
+     * Recreates a transaction which has already been processed, e.g., one
+     * read from a block store.
+     *
+     * @param transactionId id of the transaction
+     * @param from          sender's public key
+     * @param to            recipient's public key
+     * @param value         amount of noob coins in the smallest unit
+     * @param change        amount returned to the sender
+     * @param signature     sender's signature
+     * @param inputs        inputs of the transaction
+     * @param outputs       outputs of the transaction
+     */
+    Transaction(String transactionId, PublicKey from, PublicKey to,
+            long value, long change, byte[] signature,
+            List<TransactionInput> inputs, List<TransactionOutput> outputs) {
+        this(from, to, value, change, inputs);
+        this.transactionId = transactionId;
+        this.signature = signature;
+        this.outputs = outputs;
     }
 
     public void addTransactionOutput(TransactionOutput txn) {
@@ -55,26 +109,40 @@ public class Transaction {
         return Collections.unmodifiableList(outputs);
     }
 
+    /**
+     * Returns the inputs of the transaction.
+     *
+     * @return the inputs, empty for the genesis transaction
+     */
     public List<TransactionInput> getInputs() {
-        return Collections.unmodifiableList(inputs);
+        return inputs == null ? Collections.emptyList()
+                : Collections.unmodifiableList(inputs);
     }
 
 
     /**
      * Calculates the transaction hash which is used as the transaction id.
+     * Two transactions can't have the same id as they can't spend the same
+     * outputs.
+     *
+     * @return the hexadecimal hash of the transaction's preimage
+     */
+    String calculateHash() {
+        return StringUtil.toString(getHash());
+    }
+
+    /**
+     * Returns the SHA-256 hash of the transaction's canonical preimage.
      *
-     * @return
+     * @return the raw hash, shouldn't be modified
      */
-    private String calculateHash() {
-        // increase the sequence to avoid two identical transactions
-        // having the same hash
-        sequence++;
+    byte[] getHash() {
+        if (hash == null) {
+            byte[] data = getSignatureData();
+            hash = StringUtil.getSha256Digest().digest(data);
+        }
 
-        return StringUtil.applySha256(
-                StringUtil.getStringFromKey(sender) +
-                        StringUtil.getStringFromKey(recipient) +
-                        Float.toString(value)
-                        + sequence);
+        return hash;
     }
 
     /**
@@ -87,11 +155,7 @@ public class Transaction {
             throw new RuntimeException("The transaction is already signed!");
         }
 
-        String data = StringUtil.getStringFromKey(sender) +
-                StringUtil.getStringFromKey(recipient) +
-                Float.toString(value);
-
-        signature = StringUtil.applyECDSASig(privateKey, data);
+        signature = StringUtil.applyECDSASig(privateKey, getSignatureData());
     }
 
 
@@ -102,62 +166,116 @@ public class Transaction {
      * @return true if the signature is valid, false otherwise
      */
     public boolean verifySignature() {
-        String data = StringUtil.getStringFromKey(sender) +
-                StringUtil.getStringFromKey(recipient) +
-                Float.toString(value);
+        return StringUtil.verifyECDSASig(sender, getSignatureData(),
+                signature);
+    }
 
-        return StringUtil.verifyECDSASig(sender, data, signature);
+    /**
+     * Returns the data covered by the transaction's signature, its
+     * canonical preimage.
+     *
+     * @return the signed data, shouldn't be modified
+     * @see BlockCodec#encodePreimage(Transaction)
+     */
+    byte[] getSignatureData() {
+        if (preimage == null) {
+            preimage = BlockCodec.encodePreimage(this);
+        }
+
+        return preimage;
+    }
+
+    public Address getSenderAddress() {
+        if (senderAddress == null) {
+            senderAddress = Address.of(sender);
+        }
+
+        return senderAddress;
+    }
+
+    public Address getRecipientAddress() {
+        if (recipientAddress == null) {
+            recipientAddress = Address.of(recipient);
+        }
+
+        return recipientAddress;
+    }
+
+    byte[] getSignature() {
+        return signature;
     }
 
     /**
-     * Processes a transaction.
+     * Processes a transaction by spending its inputs and creating its outputs
+     * in the unspent transaction outputs. The inputs are spent and the
+     * outputs created in one step, so concurrent transactions can't spend the
+     * same output twice.
      *
+     * @param utxos the unspent transaction outputs of the chain
      * @return true if the transaction can be created
      */
-    public boolean processTransaction() {
+    public boolean processTransaction(UtxoStore utxos) {
 
-        if (!verifySignature()) {
+        if (!SignatureVerifier.getDefault().verify(this)) {
             log.info("Failed to verify transaction signature.");
 
             return false;
         }
 
         // gather transaction inputs (Make sure they are unspent):
+        List<String> spentIds = new ArrayList<>(inputs.size());
         for (TransactionInput txn : inputs) {
-            txn.setUnspentTxnOutput(
-                    NoobChain.UTXO.get(txn.getTransactionOutputId()));
+            TransactionOutput unspent =
+                    utxos.get(txn.getTransactionOutputId());
+            if (unspent == null) {
+                log.info("Transaction input, {}, is already spent.",
+                        txn.getTransactionOutputId());
+                return false;
+            }
+            txn.setUnspentTxnOutput(unspent);
+            spentIds.add(txn.getTransactionOutputId());
         }
 
         // check if transaction is valid
-        if (getInputSum() < NoobChain.MINIMUM_TRANSACTION_VALUE) {
+        long inputSum;
+        try {
+            inputSum = getInputSum();
+        } catch (ArithmeticException e) {
+            log.info("Transaction inputs exceed the maximum amount.");
+            return false;
+        }
+        if (inputSum < NoobChain.MINIMUM_TRANSACTION_VALUE) {
             log.info("Transaction input, {}, is less than minimum amount",
-                    getInputSum());
+                    Amount.toString(inputSum));
+            return false;
+        }
+        if (value <= 0 || change < 0 || inputSum - value != change) {
+            log.info("Transaction value, {}, and change, {}, don't match "
+                    + "its inputs", Amount.toString(value),
+                    Amount.toString(change));
             return false;
         }
 
-        // generate transaction outputs
-
-        // get value of inputs then the left over change:
-        float leftOver = getInputSum() - value;
+        // generate the signed transaction outputs
         transactionId = calculateHash();
 
-        //send value to the recipient
-        outputs.add(new TransactionOutput(recipient, value, transactionId));
+        List<TransactionOutput> created = new ArrayList<>();
 
-        // send the remaining amount back to the sender
-        outputs.add(new TransactionOutput(sender, leftOver, transactionId));
+        //send value to the recipient
+        created.add(new TransactionOutput(recipient, value, transactionId));
 
-        // add outputs to unspent list
-        for (TransactionOutput txn : outputs) {
-            NoobChain.UTXO.put(txn.getId(), txn);
+        // send the change back to the sender, if there is any
+        if (change > 0) {
+            created.add(new TransactionOutput(sender, change, transactionId));
         }
 
-        // remove transaction inputs from UTXO lists as spent
-        for (TransactionInput txn : inputs) {
-            if (txn.getUnspentTxnOutput() != null) {
-                NoobChain.UTXO.remove(txn.getUnspentTxnOutput().getId());
-            }
+        // remove transaction inputs from UTXO lists as spent and
+        // add outputs to unspent list
+        if (utxos.apply(spentIds, created) == null) {
+            log.info("Transaction inputs were spent by another transaction.");
+            return false;
         }
+        outputs.addAll(created);
 
         return true;
     }
@@ -166,12 +284,14 @@ public class Transaction {
      * Returns the sum of all input transaction.
      *
      * @return sum all input transactions
+     * @throws ArithmeticException if the sum exceeds the maximum amount
      */
-    public float getInputSum() {
-        float total = 0;
+    public long getInputSum() {
+        long total = 0;
         for (TransactionInput txn : inputs) {
             if (txn.getUnspentTxnOutput() != null) {
-                total += txn.getUnspentTxnOutput().getValue();
+                total = Amount.add(total,
+                        txn.getUnspentTxnOutput().getValue());
             }
         }
 
@@ -182,11 +302,12 @@ public class Transaction {
      * Returns the sum of all output transactions.
      *
      * @return sum of all output transactions
+     * @throws ArithmeticException if the sum exceeds the maximum amount
      */
-    public float getOutputSum() {
-        float total = 0;
+    public long getOutputSum() {
+        long total = 0;
         for (TransactionOutput txn : outputs) {
-            total += txn.getValue();
+            total = Amount.add(total, txn.getValue());
         }
 
         return total;
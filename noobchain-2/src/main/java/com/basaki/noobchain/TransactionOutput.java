@@ -12,22 +12,69 @@ public class TransactionOutput {
     @Getter
     private PublicKey recipient;
 
-    // amount of noob coins
+    // amount of noob coins in the smallest unit, see Amount
     @Getter
-    private float value;
+    private long value;
 
     // id of the parent transaction
     @Getter
     private String parentTransactionId;
 
-    public TransactionOutput(PublicKey reciepient, float value,
+    // address of the recipient, created on first use
+    private transient Address owner;
+
+    public TransactionOutput(PublicKey reciepient, long value,
             String parentTransactionId) {
         this.recipient = reciepient;
         this.value = value;
         this.parentTransactionId = parentTransactionId;
-        this.id = StringUtil.applySha256(
-                StringUtil.getStringFromKey(reciepient) + Float.toString(
-                        value) + parentTransactionId);
+        this.id = calculateId(getOwner(), value, parentTransactionId);
+    }
+
+    /**
+     * Calculates the id of an output from its owner, value and the id of the
+     * transaction which created it.
+     *
+     * @param owner               address of the owner
+     * @param value               amount of noob coins in the smallest unit
+     * @param parentTransactionId id of the parent transaction
+     * @return the hexadecimal id
+     */
+    static String calculateId(Address owner, long value,
+            String parentTransactionId) {
+        return StringUtil.applySha256(owner.toString() + Long.toString(value)
+                + parentTransactionId);
+    }
+
+    /**
+     * Recreates an output which has already been created, e.g., one read
+     * from a block store.
+     *
+     * @param id                  id of the output
+     * @param reciepient          owner of the output
+     * @param value               amount of noob coins in the smallest
+     *                            unit
+     * @param parentTransactionId id of the parent transaction
+     */
+    TransactionOutput(String id, PublicKey reciepient, long value,
+            String parentTransactionId) {
+        this.id = id;
+        this.recipient = reciepient;
+        this.value = value;
+        this.parentTransactionId = parentTransactionId;
+    }
+
+    /**
+     * Returns the address of the output's recipient.
+     *
+     * @return the owner of the output
+     */
+    public Address getOwner() {
+        if (owner == null) {
+            owner = Address.of(recipient);
+        }
+
+        return owner;
     }
 
     //Check if coin belongs to you
@@ -40,6 +87,16 @@ public class TransactionOutput {
      * key passed as the parameter
      */
     public boolean isMine(PublicKey publicKey) {
-        return (publicKey == recipient);
+        return isMine(Address.of(publicKey));
+    }
+
+    /**
+     * Check if a transaction belongs to an address
+     *
+     * @param address address to be tested against
+     * @return true if the transaction belongs to the address
+     */
+    public boolean isMine(Address address) {
+        return getOwner().equals(address);
     }
 }
@@ -0,0 +1,129 @@
+package com.basaki.noobchain;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * {@code UtxoSet} is a {@code UtxoStore} backed by hash maps which isn't
+ * thread-safe. Besides the lookup of an output by its id, the outputs are
+ * indexed by the address of their owner along with a running balance per
+ * owner. Both are updated whenever an output is added or spent, so a wallet's
+ * balance and outputs are found without looking at the outputs of everybody
+ * else.
+ */
+public class UtxoSet implements UtxoStore {
+
+    // all unspent outputs by output id
+    private final Map<String, TransactionOutput> outputs = new HashMap<>();
+
+    // unspent outputs and balance by owner
+    private final OwnerIndex owners = OwnerIndex.create();
+
+    @Override
+    public TransactionOutput get(String id) {
+        return outputs.get(id);
+    }
+
+    @Override
+    public boolean contains(String id) {
+        return outputs.containsKey(id);
+    }
+
+    @Override
+    public int size() {
+        return outputs.size();
+    }
+
+    @Override
+    public Collection<TransactionOutput> values() {
+        return Collections.unmodifiableCollection(outputs.values());
+    }
+
+    /**
+     * Adds an unspent output. An existing output with the same id is
+     * replaced.
+     *
+     * @param output the unspent transaction output
+     */
+    public void put(TransactionOutput output) {
+        TransactionOutput previous = outputs.put(output.getId(), output);
+        if (previous != null) {
+            owners.remove(previous);
+        }
+        owners.add(output);
+    }
+
+    /**
+     * Removes an output once it's spent.
+     *
+     * @param id id of the transaction output
+     * @return the removed output or null if it wasn't unspent
+     */
+    public TransactionOutput remove(String id) {
+        TransactionOutput output = outputs.remove(id);
+        if (output != null) {
+            owners.remove(output);
+        }
+
+        return output;
+    }
+
+    @Override
+    public void add(TransactionOutput output) {
+        put(output);
+    }
+
+    @Override
+    public List<TransactionOutput> apply(Collection<String> spentIds,
+            Collection<TransactionOutput> created) {
+        List<TransactionOutput> spent = new ArrayList<>(spentIds.size());
+        for (String id : spentIds) {
+            TransactionOutput output = outputs.get(id);
+            if (output == null || spent.contains(output)) {
+                return null;
+            }
+            spent.add(output);
+        }
+
+        for (String id : spentIds) {
+            remove(id);
+        }
+        for (TransactionOutput output : created) {
+            put(output);
+        }
+
+        return spent;
+    }
+
+    public void clear() {
+        outputs.clear();
+        owners.clear();
+    }
+
+    @Override
+    public long getBalance(Address owner) {
+        return owners.getBalance(owner);
+    }
+
+    /**
+     * Returns the unspent outputs owned by an address, in the order they
+     * were added.
+     *
+     * @param owner address of the owner
+     * @return a read-only view of the owner's unspent outputs
+     */
+    @Override
+    public Collection<TransactionOutput> getOutputs(Address owner) {
+        return owners.getOutputs(owner);
+    }
+
+    @Override
+    public List<TransactionOutput> selectOutputs(Address owner, long value,
+            CoinSelector selector) {
+        return owners.selectOutputs(owner, value, selector);
+    }
+}
@@ -0,0 +1,246 @@
+package com.basaki.noobchain;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * {@code UtxoSnapshot} is the set of unspent transaction outputs after a
+ * block of the chain, written to a file so that a restarting node only
+ * replays the blocks after it. A snapshot file has the layout
+ * <pre>
+ * [int magic][byte version][int height][32 byte block hash][outputs]
+ * [int output count][int CRC32]
+ * </pre>
+ * where every output is encoded by {@code BlockCodec} and the checksum
+ * covers everything before it. A snapshot is written to a temporary file
+ * which is moved in place once it's complete, so a crash never leaves a
+ * partial snapshot behind.
+ */
+@Slf4j
+public class UtxoSnapshot {
+
+    private static final int MAGIC = 0x5554584F;
+
+    private static final byte VERSION = 3;
+
+    private static final int HEADER_LENGTH = 9 + Sha256.HASH_LENGTH;
+
+    private static final int TRAILER_LENGTH = 8;
+
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    private static final String PREFIX = "utxo-";
+
+    private static final String SUFFIX = ".snap";
+
+    // height of the block the snapshot was taken after
+    @Getter
+    private final int height;
+
+    @Getter
+    private final String blockHash;
+
+    private final List<TransactionOutput> outputs;
+
+    private UtxoSnapshot(int height, String blockHash,
+            List<TransactionOutput> outputs) {
+        this.height = height;
+        this.blockHash = blockHash;
+        this.outputs = outputs;
+    }
+
+    public List<TransactionOutput> getOutputs() {
+        return Collections.unmodifiableList(outputs);
+    }
+
+    /**
+     * Writes a snapshot into a directory. The file is named after the
+     * height, so a later snapshot of the same height replaces it.
+     *
+     * @param directory directory of the snapshots, created if missing
+     * @param height    height of the block the snapshot is taken after
+     * @param blockHash hash of the block
+     * @param outputs   the unspent transaction outputs after the block
+     * @return the snapshot file
+     */
+    public static Path write(Path directory, int height, String blockHash,
+            Collection<TransactionOutput> outputs) {
+        Path file = directory.resolve(
+                String.format("%s%010d%s", PREFIX, height, SUFFIX));
+        Path temporary = directory.resolve(file.getFileName() + ".tmp");
+
+        try {
+            Files.createDirectories(directory);
+            try (FileChannel channel = FileChannel.open(temporary,
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                CRC32 crc = new CRC32();
+                ByteBuffer chunk = ByteBuffer.allocate(CHUNK_SIZE);
+                chunk.putInt(MAGIC);
+                chunk.put(VERSION);
+                chunk.putInt(height);
+                chunk.put(StringUtil.toBytes(blockHash));
+
+                int count = 0;
+                for (TransactionOutput output : outputs) {
+                    put(channel, chunk, crc, output);
+                    count++;
+                }
+
+                if (chunk.remaining() < TRAILER_LENGTH) {
+                    flush(channel, chunk, crc);
+                }
+                chunk.putInt(count);
+                crc.update(chunk.array(), 0, chunk.position());
+                chunk.putInt((int) crc.getValue());
+                chunk.flip();
+                while (chunk.hasRemaining()) {
+                    channel.write(chunk);
+                }
+                channel.force(false);
+            }
+
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        return file;
+    }
+
+    /**
+     * Reads a snapshot file.
+     *
+     * @param file the snapshot file
+     * @return the snapshot
+     * @throws IllegalArgumentException if the file isn't a snapshot or is
+     *                                  damaged
+     */
+    public static UtxoSnapshot read(Path file) {
+        try (FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_LENGTH + TRAILER_LENGTH
+                    || size > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException(
+                        "Not a snapshot: " + file);
+            }
+
+            MappedByteBuffer buffer =
+                    channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            int checked = (int) size - 4;
+            ByteBuffer content = buffer.duplicate();
+            content.limit(checked);
+            CRC32 crc = new CRC32();
+            crc.update(content);
+            if (buffer.getInt(0) != MAGIC || buffer.get(4) != VERSION
+                    || buffer.getInt(checked) != (int) crc.getValue()) {
+                throw new IllegalArgumentException(
+                        "Damaged snapshot: " + file);
+            }
+
+            buffer.position(5);
+            int height = buffer.getInt();
+            byte[] hash = new byte[Sha256.HASH_LENGTH];
+            buffer.get(hash);
+
+            int count = buffer.getInt(checked - 4);
+            List<TransactionOutput> outputs = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                outputs.add(BlockCodec.decodeOutput(buffer));
+            }
+
+            return new UtxoSnapshot(height, StringUtil.toString(hash),
+                    outputs);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Lists the snapshot files in a directory.
+     *
+     * @param directory directory of the snapshots
+     * @return the snapshot files, the latest first
+     */
+    public static List<Path> list(Path directory) {
+        List<Path> files = new ArrayList<>();
+        if (!Files.isDirectory(directory)) {
+            return files;
+        }
+
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory,
+                PREFIX + "*" + SUFFIX)) {
+            stream.forEach(files::add);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        files.sort(Collections.reverseOrder());
+
+        return files;
+    }
+
+    /**
+     * Deletes all but the latest snapshots of a directory.
+     *
+     * @param directory directory of the snapshots
+     * @param keep      number of snapshots kept
+     */
+    public static void prune(Path directory, int keep) {
+        List<Path> files = list(directory);
+        for (int i = keep; i < files.size(); i++) {
+            try {
+                Files.delete(files.get(i));
+            } catch (IOException e) {
+                log.warn("Failed to delete snapshot {}", files.get(i), e);
+            }
+        }
+    }
+
+    /**
+     * Adds an output to the chunk, writing the chunk out first if the output
+     * doesn't fit anymore.
+     */
+    private static void put(FileChannel channel, ByteBuffer chunk, CRC32 crc,
+            TransactionOutput output) throws IOException {
+        int start = chunk.position();
+        try {
+            BlockCodec.encode(output, chunk);
+        } catch (BufferOverflowException e) {
+            if (start == 0) {
+                throw new IllegalArgumentException(
+                        "Output too large: " + output.getId(), e);
+            }
+            chunk.position(start);
+            flush(channel, chunk, crc);
+            put(channel, chunk, crc, output);
+        }
+    }
+
+    private static void flush(FileChannel channel, ByteBuffer chunk,
+            CRC32 crc) throws IOException {
+        crc.update(chunk.array(), 0, chunk.position());
+        chunk.flip();
+        while (chunk.hasRemaining()) {
+            channel.write(chunk);
+        }
+        chunk.clear();
+    }
+}
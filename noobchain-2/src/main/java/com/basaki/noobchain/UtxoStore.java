@@ -0,0 +1,91 @@
+package com.basaki.noobchain;
+
+import java.security.PublicKey;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * {@code UtxoStore} holds the unspent transaction outputs (UTXOs) of a
+ * blockchain. Outputs are spent and created together, one transaction at a
+ * time, so that a transaction either takes full effect or none at all.
+ */
+public interface UtxoStore {
+
+    /**
+     * Returns an unspent output.
+     *
+     * @param id id of the transaction output
+     * @return the output or null if there's no unspent output with the id
+     */
+    TransactionOutput get(String id);
+
+    boolean contains(String id);
+
+    int size();
+
+    /**
+     * Returns every unspent output, in no particular order.
+     *
+     * @return a read-only view of the unspent outputs
+     */
+    Collection<TransactionOutput> values();
+
+    /**
+     * Adds an unspent output which isn't created by spending other outputs,
+     * e.g., the output of the genesis transaction.
+     *
+     * @param output the unspent transaction output
+     */
+    void add(TransactionOutput output);
+
+    /**
+     * Spends the outputs referred by the inputs of a transaction and adds the
+     * outputs created by it in one step. Nothing is changed if any of the
+     * outputs to be spent isn't unspent.
+     *
+     * @param spentIds ids of the outputs spent by the transaction
+     * @param created  outputs created by the transaction
+     * @return the spent outputs in the order of their ids or null if the
+     * transaction can't be applied
+     */
+    List<TransactionOutput> apply(Collection<String> spentIds,
+            Collection<TransactionOutput> created);
+
+    /**
+     * Returns the sum of all unspent outputs owned by an address.
+     *
+     * @param owner address of the owner
+     * @return the balance of the owner in the smallest unit
+     */
+    long getBalance(Address owner);
+
+    default long getBalance(PublicKey owner) {
+        return getBalance(Address.of(owner));
+    }
+
+    /**
+     * Returns the unspent outputs owned by an address, in the order they
+     * were added.
+     *
+     * @param owner address of the owner
+     * @return the owner's unspent outputs
+     */
+    Collection<TransactionOutput> getOutputs(Address owner);
+
+    default Collection<TransactionOutput> getOutputs(PublicKey owner) {
+        return getOutputs(Address.of(owner));
+    }
+
+    /**
+     * Selects unspent outputs of an owner to send an amount. The selector
+     * gets the owner's outputs sorted by value.
+     *
+     * @param owner    address of the owner
+     * @param value    amount to be sent in the smallest unit
+     * @param selector chooses the outputs
+     * @return the selected outputs or null if the owner can't send the
+     * amount
+     */
+    List<TransactionOutput> selectOutputs(Address owner, long value,
+            CoinSelector selector);
+}
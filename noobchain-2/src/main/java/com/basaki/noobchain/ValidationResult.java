@@ -0,0 +1,51 @@
+package com.basaki.noobchain;
+
+import lombok.Getter;
+
+/**
+ * {@code ValidationResult} is the outcome of validating a blockchain. An
+ * invalid result tells the index of the first block which failed validation
+ * and why.
+ */
+public class ValidationResult {
+
+    private static final ValidationResult VALID =
+            new ValidationResult(-1, null);
+
+    // index of the first invalid block, -1 if the chain is valid
+    @Getter
+    private final int failedBlock;
+
+    @Getter
+    private final String reason;
+
+    private ValidationResult(int failedBlock, String reason) {
+        this.failedBlock = failedBlock;
+        this.reason = reason;
+    }
+
+    public static ValidationResult valid() {
+        return VALID;
+    }
+
+    /**
+     * Creates the result of a chain with an invalid block.
+     *
+     * @param failedBlock index of the first invalid block
+     * @param reason      why the block is invalid
+     * @return an invalid result
+     */
+    public static ValidationResult invalid(int failedBlock, String reason) {
+        return new ValidationResult(failedBlock, reason);
+    }
+
+    public boolean isValid() {
+        return failedBlock < 0;
+    }
+
+    @Override
+    public String toString() {
+        return isValid() ? "valid"
+                : "block " + failedBlock + " is invalid: " + reason;
+    }
+}
@@ -10,7 +10,8 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
+import java.util.NavigableSet;
+import java.util.TreeSet;
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 
@@ -21,68 +22,219 @@ import lombok.extern.slf4j.Slf4j;
 @Slf4j
 public class Wallet {
 
+    // elliptic curve of the wallet keys
+    static final String CURVE = "prime192v1";
+
     @Getter
     private PrivateKey privateKey;
 
     @Getter
     private PublicKey publicKey;
 
-    // unspent transactions
-    private Map<String, TransactionOutput> utxo = new HashMap<>();
+    // address of the public key, the owner of the wallet's outputs
+    @Getter
+    private Address address;
+
+    // unspent transactions of the wallet, either the ones of the whole chain
+    // or the wallet's own view kept current by the chain's block events
+    private final UtxoStore utxos;
+
+    private final CoinSelector coinSelector;
+
+    // outputs spent by transactions the wallet sent which aren't in a block
+    // yet, by id, so the next transaction doesn't pick them again
+    private final Map<String, TransactionOutput> reserved = new HashMap<>();
+
+    /**
+     * Creates a wallet with a new key pair which tracks its own unspent
+     * outputs. The wallet subscribes to the blocks added to the chain, so its
+     * queries never look at the outputs of other wallets.
+     *
+     * @param chain the chain the wallet is used with
+     */
+    public Wallet(NoobChain chain) {
+        this(chain, CoinSelector.largestFirst());
+    }
+
+    /**
+     * Creates a wallet with a new key pair and its own coin selection which
+     * tracks its own unspent outputs.
+     *
+     * @param chain        the chain the wallet is used with
+     * @param coinSelector chooses the outputs spent by a transaction
+     */
+    public Wallet(NoobChain chain, CoinSelector coinSelector) {
+        this(new ConcurrentUtxoStore(), coinSelector);
+        chain.addBlockListener(new BlockListener() {
+            @Override
+            public void blockCommitted(BlockCommitEvent event) {
+                apply(event, event.getSpent(address),
+                        event.getCreated(address));
+                release(event.getSpent(address));
+            }
+
+            @Override
+            public void blockDisconnected(BlockCommitEvent event) {
+                apply(event, event.getCreated(address),
+                        event.getSpent(address));
+                release(event.getSpent(address));
+            }
+        });
+    }
 
-    public Wallet() {
+    /**
+     * Creates a wallet with a new key pair.
+     *
+     * @param utxos the unspent transaction outputs of the chain
+     */
+    public Wallet(UtxoStore utxos) {
+        this(utxos, CoinSelector.largestFirst());
+    }
+
+    /**
+     * Creates a wallet with a new key pair and its own coin selection.
+     *
+     * @param utxos        the unspent transaction outputs of the chain
+     * @param coinSelector chooses the outputs spent by a transaction
+     */
+    public Wallet(UtxoStore utxos, CoinSelector coinSelector) {
+        this.utxos = utxos;
+        this.coinSelector = coinSelector;
         generateKeyPair();
     }
 
     /**
-     * Returns the current balance of the wallet by summing all the unspent
-     * transaction outputs which has the same public key as the wallet. All
-     * the unspent trasactions are added to the wallet's unspent transaction.
+     * Returns the current balance of the wallet, i.e., the sum of all the
+     * unspent transaction outputs which has the same address as the
+     * wallet. The balance is kept up to date by the UTXO store, so it doesn't
+     * depend on the number of unspent outputs owned by other wallets. The
+     * outputs spent by transactions which aren't in a block yet don't count.
      *
-     * @return the current wallet balance
+     * @return the current wallet balance in the smallest unit
      */
-    public float getBalance() {
-        return NoobChain.UTXO.values()
-                .stream()
-                .filter(t -> {
-                    boolean mine = t.isMine(publicKey);
-                    // if the output belongs to the current wallet
-                    if (mine) {
-                        // add it to the list of unspent transactions
-                        utxo.put(t.getId(), t);
-                    }
-                    return mine;
-                })
-                .collect(Collectors.summingDouble(TransactionOutput::getValue))
-                .floatValue();
+    public synchronized long getBalance() {
+        return utxos.getBalance(address) - getReservedBalance();
     }
 
-    public Transaction sendFunds(PublicKey recipient, float value) {
+    /**
+     * Creates a signed transaction which sends an amount to a recipient. The
+     * inputs are chosen by the wallet's coin selector among the outputs
+     * which no other pending transaction of the wallet spends. They stay
+     * reserved until a block spends them or the transaction is released.
+     *
+     * @param recipient public key of the recipient
+     * @param value     amount to be sent in the smallest unit
+     * @return the transaction or null if the wallet can't afford it
+     */
+    public synchronized Transaction sendFunds(PublicKey recipient,
+            long value) {
         if (getBalance() < value) {
             log.info("Transaction discarded as there isn't enough fund...");
             return null;
         }
 
-        List<TransactionInput> inputs = new ArrayList<>();
+        List<TransactionOutput> selected = utxos.selectOutputs(address, value,
+                reserved.isEmpty() ? coinSelector : this::selectUnreserved);
+        if (selected == null) {
+            log.info("Transaction discarded as there isn't enough fund...");
+            return null;
+        }
 
-        float total = 0;
-        for (Map.Entry<String, TransactionOutput> item : utxo.entrySet()) {
-            TransactionOutput unspentTxn = item.getValue();
-            total += unspentTxn.getValue();
+        List<TransactionInput> inputs = new ArrayList<>();
+        long inputSum = 0;
+        for (TransactionOutput unspentTxn : selected) {
             inputs.add(new TransactionInput(unspentTxn.getId()));
-            if (total > value) {
-                break;
+            inputSum = Amount.add(inputSum, unspentTxn.getValue());
+        }
+
+        Transaction txn = new Transaction(publicKey, recipient, value,
+                inputSum - value, inputs);
+        txn.generateSignature(privateKey);
+        for (TransactionOutput unspentTxn : selected) {
+            reserved.put(unspentTxn.getId(), unspentTxn);
+        }
+
+        return txn;
+    }
+
+    /**
+     * Selects among the outputs which aren't reserved by a pending
+     * transaction.
+     */
+    private List<TransactionOutput> selectUnreserved(
+            NavigableSet<TransactionOutput> outputs, long value) {
+        NavigableSet<TransactionOutput> unreserved =
+                new TreeSet<>(CoinSelector.BY_VALUE);
+        for (TransactionOutput output : outputs) {
+            if (!reserved.containsKey(output.getId())) {
+                unreserved.add(output);
             }
         }
 
-        for (TransactionInput input : inputs) {
-            utxo.remove(input.getTransactionOutputId());
+        return coinSelector.select(unreserved, value);
+    }
+
+    /**
+     * Returns the sum of the reserved outputs. The outputs which have been
+     * spent in the meantime are no longer reserved, e.g., if the wallet uses
+     * the chain's unspent outputs and doesn't get the chain's block events.
+     */
+    private long getReservedBalance() {
+        reserved.values().removeIf(output -> !utxos.contains(output.getId()));
+
+        long total = 0;
+        for (TransactionOutput output : reserved.values()) {
+            total += output.getValue();
         }
 
-        Transaction txn = new Transaction(publicKey, recipient, value, inputs);
-        txn.generateSignature(privateKey);
+        return total;
+    }
 
-        return txn;
+    /**
+     * Releases the outputs reserved by a transaction of the wallet which
+     * won't be added to the chain, e.g., because the mempool rejected it.
+     * The outputs can be spent by the next transaction again.
+     *
+     * @param transaction a transaction created by the wallet
+     */
+    public synchronized void release(Transaction transaction) {
+        for (TransactionInput input : transaction.getInputs()) {
+            reserved.remove(input.getTransactionOutputId());
+        }
+    }
+
+    /**
+     * Releases the reserved outputs spent by a block added to the chain, or
+     * restored by a block taken off the chain. The reservations of the
+     * other pending transactions are kept.
+     */
+    private synchronized void release(List<TransactionOutput> outputs) {
+        for (TransactionOutput output : outputs) {
+            reserved.remove(output.getId());
+        }
+        reserved.values().removeIf(output -> !utxos.contains(output.getId()));
+    }
+
+    /**
+     * Applies the wallet's outputs created and spent by a block to the
+     * wallet's own unspent outputs. A block taken off the chain is applied
+     * the other way round.
+     */
+    private void apply(BlockCommitEvent event, List<TransactionOutput> spent,
+            List<TransactionOutput> created) {
+        if (spent.isEmpty() && created.isEmpty()) {
+            return;
+        }
+
+        List<String> spentIds = new ArrayList<>(spent.size());
+        for (TransactionOutput output : spent) {
+            spentIds.add(output.getId());
+        }
+
+        if (utxos.apply(spentIds, created) == null) {
+            log.error("Block {} spends an output unknown to the wallet.",
+                    event.getHeight());
+        }
     }
 
     private void generateKeyPair() {
@@ -92,7 +244,7 @@ public class Wallet {
             KeyPairGenerator keyGen =
                     KeyPairGenerator.getInstance("ECDSA", "BC");
             SecureRandom random = SecureRandom.getInstance("SHA1PRNG");
-            ECGenParameterSpec ecSpec = new ECGenParameterSpec("prime192v1");
+            ECGenParameterSpec ecSpec = new ECGenParameterSpec(CURVE);
             // Initialize the key generator and generate a KeyPair
             keyGen.initialize(ecSpec,
                     random);   //256 bytes provides an acceptable security level
@@ -100,6 +252,7 @@ public class Wallet {
             // Set the public and private keys from the keyPair
             privateKey = keyPair.getPrivate();
             publicKey = keyPair.getPublic();
+            address = Address.of(publicKey);
         } catch (Exception e) {
             throw new RuntimeException(e);
         }
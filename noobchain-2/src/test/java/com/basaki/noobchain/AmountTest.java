@@ -0,0 +1,83 @@
+package com.basaki.noobchain;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class AmountTest {
+
+    @Test
+    public void testCoins() {
+        assertEquals(0, Amount.coins(0));
+        assertEquals(Amount.COIN, Amount.coins(1));
+        assertEquals(2_100_000_000_000_000L, Amount.coins(21_000_000));
+        assertEquals(-Amount.COIN, Amount.coins(-1));
+    }
+
+    @Test(expected = ArithmeticException.class)
+    public void testCoinsOverflow() {
+        Amount.coins(Long.MAX_VALUE / Amount.COIN + 1);
+    }
+
+    @Test
+    public void testParse() {
+        assertEquals(Amount.coins(12) + Amount.COIN / 2, Amount.parse("12.5"));
+        assertEquals(Amount.coins(40), Amount.parse("40"));
+        assertEquals(Amount.coins(40), Amount.parse("40.00000000"));
+        assertEquals(1, Amount.parse("0.00000001"));
+        assertEquals(Amount.COIN / 10, Amount.parse(".1"));
+        assertEquals(Long.MAX_VALUE, Amount.parse("92233720368.54775807"));
+    }
+
+    @Test
+    public void testParseRejectsMalformedNumbers() {
+        for (String text : new String[] {"", "1,5", "one", "1.2.3", " 1"}) {
+            try {
+                Amount.parse(text);
+                fail("Parsed \"" + text + "\"");
+            } catch (NumberFormatException e) {
+                // expected
+            }
+        }
+    }
+
+    @Test
+    public void testParseRejectsUnrepresentableAmounts() {
+        for (String text : new String[] {"0.000000001", "1.123456789",
+                "92233720368.54775808", "1e20"}) {
+            try {
+                Amount.parse(text);
+                fail("Parsed \"" + text + "\"");
+            } catch (ArithmeticException e) {
+                // expected
+            }
+        }
+    }
+
+    @Test
+    public void testAdd() {
+        assertEquals(Amount.parse("3.5"),
+                Amount.add(Amount.coins(1), Amount.parse("2.5")));
+        assertEquals(Long.MAX_VALUE, Amount.add(Long.MAX_VALUE - 1, 1));
+    }
+
+    @Test(expected = ArithmeticException.class)
+    public void testAddOverflow() {
+        Amount.add(Long.MAX_VALUE, 1);
+    }
+
+    @Test
+    public void testToString() {
+        assertEquals("0", Amount.toString(0));
+        assertEquals("1", Amount.toString(Amount.COIN));
+        assertEquals("100", Amount.toString(Amount.coins(100)));
+        assertEquals("12.5", Amount.toString(Amount.parse("12.5")));
+        assertEquals("0.00000001", Amount.toString(1));
+        assertEquals("92233720368.54775807", Amount.toString(Long.MAX_VALUE));
+
+        for (String text : new String[] {"0.1", "40.5", "21000000"}) {
+            assertEquals(text, Amount.toString(Amount.parse(text)));
+        }
+    }
+}
@@ -0,0 +1,243 @@
+package com.basaki.noobchain;
+
+import java.nio.ByteBuffer;
+import java.security.Security;
+import java.util.List;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class BlockCodecTest {
+
+    // Integer.MAX_VALUE as an unsigned varint
+    private static final byte[] MAX_VARINT = {
+            (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x07};
+
+    private NoobChain chain;
+
+    private Wallet walletA;
+
+    private Wallet walletB;
+
+    @BeforeClass
+    public static void setUpProvider() {
+        Security.addProvider(new BouncyCastleProvider());
+    }
+
+    @Before
+    public void setUp() {
+        chain = new NoobChain(new Miner(1), 1);
+        walletA = new Wallet(chain);
+        walletB = new Wallet(chain);
+        Wallet coinbase = new Wallet(chain);
+
+        Transaction genesis = new Transaction(coinbase.getPublicKey(),
+                walletA.getPublicKey(), Amount.coins(100), null);
+        genesis.generateSignature(coinbase.getPrivateKey());
+        genesis.addTransactionOutput(new TransactionOutput(
+                genesis.getRecipient(), genesis.getValue(),
+                genesis.getTransactionId()));
+        chain.addBlock(genesis);
+
+        chain.addBlock(walletA.sendFunds(walletB.getPublicKey(),
+                Amount.parse("40.5")));
+    }
+
+    @Test
+    public void testBlockRoundTrip() {
+        Block block = chain.getIndex().getBlock(1);
+
+        byte[] encoded = BlockCodec.encode(block);
+        Block decoded = BlockCodec.decode(ByteBuffer.wrap(encoded));
+
+        assertEquals(block.getHash(), decoded.getHash());
+        assertEquals(block.getPreviousHash(), decoded.getPreviousHash());
+        assertEquals(block.getTimeStamp(), decoded.getTimeStamp());
+        assertEquals(block.getNonce(), decoded.getNonce());
+        assertEquals(block.getMerkleRoot(), decoded.getMerkleRoot());
+        assertEquals(block.getHash(), decoded.calculateHash());
+        assertEquals(block.getTransactions().size(),
+                decoded.getTransactions().size());
+        assertTransactionEquals(block.getTransactions().get(0),
+                decoded.getTransactions().get(0));
+        assertArrayEquals(encoded, BlockCodec.encode(decoded));
+
+        assertNull(new ChainValidator(1).checkBlock(
+                chain.getIndex().getBlock(0), decoded, 1));
+    }
+
+    @Test
+    public void testTransactionRoundTrip() {
+        Transaction transaction =
+                chain.getIndex().getBlock(1).getTransactions().get(0);
+        int length = BlockCodec.getEncodedLength(transaction);
+
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        BlockCodec.encode(transaction, buffer);
+        assertFalse(buffer.hasRemaining());
+
+        buffer.flip();
+        Transaction decoded = BlockCodec.decodeTransaction(buffer);
+        assertFalse(buffer.hasRemaining());
+
+        assertTransactionEquals(transaction, decoded);
+        assertEquals(length, BlockCodec.getEncodedLength(decoded));
+        assertTrue(decoded.verifySignature());
+        assertEquals(transaction.getTransactionId(), decoded.calculateHash());
+    }
+
+    @Test
+    public void testEncodedLengthOfUnprocessedTransaction() {
+        Transaction transaction = walletB.sendFunds(walletA.getPublicKey(),
+                Amount.coins(1));
+
+        ByteBuffer buffer = ByteBuffer.allocate(1024);
+        BlockCodec.encode(transaction, buffer);
+
+        assertEquals(buffer.position(),
+                BlockCodec.getEncodedLength(transaction));
+    }
+
+    @Test
+    public void testOutputRoundTrip() {
+        TransactionOutput output = new TransactionOutput(
+                walletA.getPublicKey(), Amount.parse("0.00000001"),
+                StringUtil.applySha256("parent"));
+
+        ByteBuffer buffer = ByteBuffer.allocate(1024);
+        BlockCodec.encode(output, buffer);
+        buffer.flip();
+        TransactionOutput decoded = BlockCodec.decodeOutput(buffer);
+
+        assertFalse(buffer.hasRemaining());
+        assertEquals(output.getId(), decoded.getId());
+        assertEquals(output.getOwner(), decoded.getOwner());
+        assertEquals(output.getValue(), decoded.getValue());
+        assertEquals(output.getParentTransactionId(),
+                decoded.getParentTransactionId());
+    }
+
+    @Test
+    public void testDecodedOutputIdIsRecomputed() {
+        String parent = StringUtil.applySha256("parent");
+        TransactionOutput forged = new TransactionOutput(
+                StringUtil.applySha256("forged"), walletA.getPublicKey(),
+                Amount.coins(1), parent);
+
+        ByteBuffer buffer = ByteBuffer.allocate(1024);
+        BlockCodec.encode(forged, buffer);
+        buffer.flip();
+
+        assertEquals(new TransactionOutput(walletA.getPublicKey(),
+                        Amount.coins(1), parent).getId(),
+                BlockCodec.decodeOutput(buffer).getId());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownVersion() {
+        byte[] encoded = BlockCodec.encode(chain.getIndex().getBlock(1));
+        encoded[0] = (byte) (BlockCodec.VERSION + 1);
+
+        BlockCodec.decode(ByteBuffer.wrap(encoded));
+    }
+
+    @Test
+    public void testTruncatedBlock() {
+        byte[] encoded = BlockCodec.encode(chain.getIndex().getBlock(1));
+
+        for (int length = 0; length < encoded.length; length++) {
+            try {
+                BlockCodec.decode(ByteBuffer.wrap(encoded, 0, length));
+                fail("A block truncated to " + length + " bytes was decoded");
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testTransactionCountExceedsRemainingBytes() {
+        ByteBuffer buffer = ByteBuffer.allocate(64);
+        buffer.put(BlockCodec.VERSION);
+        // hash, previous hash, time stamp, nonce and merkle root
+        buffer.put((byte) 0).put((byte) 0).putLong(0).put((byte) 0);
+        buffer.put((byte) 0);
+        buffer.put(MAX_VARINT);
+        buffer.flip();
+
+        BlockCodec.decode(buffer);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInputCountExceedsRemainingBytes() {
+        ByteBuffer buffer = ByteBuffer.allocate(64);
+        buffer.put(BlockCodec.VERSION);
+        // id, sender, recipient, value, change and signature
+        buffer.put(new byte[] {0, 0, 0, 0, 0, 0});
+        buffer.put(MAX_VARINT);
+        buffer.flip();
+
+        BlockCodec.decodeTransaction(buffer);
+    }
+
+    @Test
+    public void testLengthExceedsRemainingBytes() {
+        // the sender key of a transaction
+        assertMalformedTransaction(MAX_VARINT);
+        // a negative length
+        assertMalformedTransaction(new byte[] {
+                (byte) 0xFB, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x0F});
+    }
+
+    private static void assertMalformedTransaction(byte[] keyLength) {
+        ByteBuffer buffer = ByteBuffer.allocate(64);
+        buffer.put(BlockCodec.VERSION);
+        buffer.put((byte) 0);
+        buffer.put(keyLength);
+        buffer.put(new byte[16]);
+        buffer.flip();
+
+        try {
+            BlockCodec.decodeTransaction(buffer);
+            fail("A malformed transaction was decoded");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    private static void assertTransactionEquals(Transaction expected,
+            Transaction actual) {
+        assertEquals(expected.getTransactionId(), actual.getTransactionId());
+        assertEquals(expected.getSender(), actual.getSender());
+        assertEquals(expected.getRecipient(), actual.getRecipient());
+        assertEquals(expected.getValue(), actual.getValue());
+        assertEquals(expected.getChange(), actual.getChange());
+        assertArrayEquals(expected.getSignature(), actual.getSignature());
+
+        List<TransactionInput> inputs = expected.getInputs();
+        assertEquals(inputs.size(), actual.getInputs().size());
+        for (int i = 0; i < inputs.size(); i++) {
+            assertEquals(inputs.get(i).getTransactionOutputId(),
+                    actual.getInputs().get(i).getTransactionOutputId());
+        }
+
+        List<TransactionOutput> outputs = expected.getOutputs();
+        assertEquals(outputs.size(), actual.getOutputs().size());
+        for (int i = 0; i < outputs.size(); i++) {
+            TransactionOutput output = actual.getOutputs().get(i);
+            assertEquals(outputs.get(i).getId(), output.getId());
+            assertEquals(outputs.get(i).getOwner(), output.getOwner());
+            assertEquals(outputs.get(i).getValue(), output.getValue());
+            assertEquals(outputs.get(i).getParentTransactionId(),
+                    output.getParentTransactionId());
+        }
+    }
+}
@@ -0,0 +1,211 @@
+package com.basaki.noobchain;
+
+import java.security.Security;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class BlockPipelineTest {
+
+    private static final long TIMEOUT_SECONDS = 30;
+
+    private NoobChain chain;
+
+    private Mempool mempool;
+
+    private BlockPipeline pipeline;
+
+    private Wallet walletA;
+
+    private Wallet walletB;
+
+    @BeforeClass
+    public static void setUpProvider() {
+        Security.addProvider(new BouncyCastleProvider());
+    }
+
+    @Before
+    public void setUp() {
+        chain = new NoobChain(new Miner(1), 1);
+        walletA = new Wallet(chain);
+        walletB = new Wallet(chain);
+        Wallet coinbase = new Wallet(chain);
+
+        Transaction genesis = new Transaction(coinbase.getPublicKey(),
+                walletA.getPublicKey(), Amount.coins(100), null);
+        genesis.generateSignature(coinbase.getPrivateKey());
+        genesis.addTransactionOutput(new TransactionOutput(
+                genesis.getRecipient(), genesis.getValue(),
+                genesis.getTransactionId()));
+        chain.addBlock(genesis);
+
+        // gives wallet A outputs for independent transactions
+        for (int i = 0; i < 4; i++) {
+            chain.addBlock(walletA.sendFunds(walletB.getPublicKey(),
+                    Amount.coins(10)));
+        }
+        for (int i = 0; i < 4; i++) {
+            chain.addBlock(walletB.sendFunds(walletA.getPublicKey(),
+                    Amount.coins(10)));
+        }
+
+        mempool = new Mempool(chain.getUtxos());
+    }
+
+    @After
+    public void tearDown() {
+        if (pipeline != null) {
+            pipeline.close();
+        }
+    }
+
+    @Test
+    public void testFutureCompletesWithBlock() throws Exception {
+        pipeline = new BlockPipeline(chain, mempool);
+
+        List<Transaction> transactions = new ArrayList<>();
+        List<CompletableFuture<Block>> futures = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            Transaction transaction = send(Amount.coins(1));
+            transactions.add(transaction);
+            futures.add(pipeline.submit(transaction));
+        }
+
+        for (int i = 0; i < futures.size(); i++) {
+            Block block = futures.get(i).get(TIMEOUT_SECONDS,
+                    TimeUnit.SECONDS);
+            assertTrue(block.getTransactions().contains(transactions.get(i)));
+            assertSame(block, chain.getIndex().getBlock(block.getHash()));
+        }
+        assertTrue(chain.validate(true).isValid());
+    }
+
+    @Test
+    public void testRejectedTransactionsCompleteExceptionally()
+            throws Exception {
+        pipeline = new BlockPipeline(chain, mempool);
+
+        Transaction transaction = send(Amount.coins(1));
+        Transaction malformed = new Transaction(
+                transaction.getTransactionId(), transaction.getSender(),
+                transaction.getRecipient(), transaction.getValue(),
+                transaction.getChange(), new byte[] {0x30, 0x7f, 0x02},
+                transaction.getInputs(), transaction.getOutputs());
+
+        assertRejected(pipeline.submit(malformed));
+        assertRejected(pipeline.submit(null));
+        assertNotNull(pipeline.submit(transaction)
+                .get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+
+        // its input has been spent by now
+        assertRejected(pipeline.submit(transaction));
+    }
+
+    @Test
+    public void testBackpressure() throws Exception {
+        CountDownLatch verifying = new CountDownLatch(1);
+        CountDownLatch proceed = new CountDownLatch(1);
+        SignatureVerifier blocking = new SignatureVerifier() {
+            @Override
+            public boolean verify(Transaction transaction) {
+                verifying.countDown();
+                try {
+                    proceed.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return super.verify(transaction);
+            }
+        };
+        pipeline = new BlockPipeline(new BlockAssembler(chain, mempool),
+                mempool, blocking, 1, 1);
+
+        List<CompletableFuture<Block>> futures = new ArrayList<>();
+        // the first one is taken by the verifier, the second one fills the
+        // queue
+        futures.add(pipeline.submit(send(Amount.coins(1))));
+        assertTrue(verifying.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        futures.add(pipeline.submit(send(Amount.coins(2))));
+
+        Transaction third = send(Amount.coins(3));
+        Thread submitter = new Thread(() -> futures.add(
+                pipeline.submit(third)));
+        submitter.start();
+        submitter.join(200);
+        assertTrue(submitter.isAlive());
+
+        proceed.countDown();
+        submitter.join(TimeUnit.SECONDS.toMillis(TIMEOUT_SECONDS));
+        assertFalse(submitter.isAlive());
+        for (CompletableFuture<Block> future : futures) {
+            assertNotNull(future.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    public void testCloseCompletesEveryFuture() throws Exception {
+        pipeline = new BlockPipeline(chain, mempool);
+
+        List<Transaction> transactions = new ArrayList<>();
+        List<CompletableFuture<Block>> futures = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            Transaction transaction = send(Amount.coins(1));
+            transactions.add(transaction);
+            futures.add(pipeline.submit(transaction));
+        }
+        Transaction late = send(Amount.coins(1));
+        pipeline.close();
+
+        int cancelled = 0;
+        for (int i = 0; i < futures.size(); i++) {
+            CompletableFuture<Block> future = futures.get(i);
+            assertTrue(future.isDone());
+            try {
+                Block block = future.get();
+                assertTrue(block.getTransactions()
+                        .contains(transactions.get(i)));
+            } catch (CancellationException | ExecutionException e) {
+                cancelled++;
+                // the transaction isn't in the chain
+                for (TransactionInput input
+                        : transactions.get(i).getInputs()) {
+                    assertTrue(chain.getUtxos().contains(
+                            input.getTransactionOutputId()));
+                }
+            }
+        }
+        // the admitted transactions, drained or not, stay in the mempool
+        assertTrue(mempool.size() <= cancelled);
+
+        assertRejected(pipeline.submit(late));
+    }
+
+    private Transaction send(long value) {
+        return walletA.sendFunds(walletB.getPublicKey(), value);
+    }
+
+    private static void assertRejected(CompletableFuture<Block> future)
+            throws Exception {
+        try {
+            future.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            fail("The transaction was accepted");
+        } catch (ExecutionException e) {
+            assertNotNull(e.getCause());
+        }
+    }
+}
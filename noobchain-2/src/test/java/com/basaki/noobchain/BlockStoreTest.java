@@ -0,0 +1,257 @@
+package com.basaki.noobchain;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.Security;
+import java.util.ArrayList;
+import java.util.List;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class BlockStoreTest {
+
+    // small enough for a few blocks per segment
+    private static final int SEGMENT_SIZE = 1024;
+
+    private static final int HEADER_LENGTH = 8 + Sha256.HASH_LENGTH;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static List<Block> blocks;
+
+    private Path directory;
+
+    private BlockStore store;
+
+    @BeforeClass
+    public static void setUpBlocks() {
+        Security.addProvider(new BouncyCastleProvider());
+
+        NoobChain chain = new NoobChain(new Miner(1), 1);
+        Wallet walletA = new Wallet(chain);
+        Wallet walletB = new Wallet(chain);
+        Wallet coinbase = new Wallet(chain);
+
+        Transaction genesis = new Transaction(coinbase.getPublicKey(),
+                walletA.getPublicKey(), Amount.coins(100), null);
+        genesis.generateSignature(coinbase.getPrivateKey());
+        genesis.addTransactionOutput(new TransactionOutput(
+                genesis.getRecipient(), genesis.getValue(),
+                genesis.getTransactionId()));
+        chain.addBlock(genesis);
+        for (int i = 0; i < 9; i++) {
+            chain.addBlock(walletA.sendFunds(walletB.getPublicKey(),
+                    Amount.coins(1)));
+        }
+
+        blocks = new ArrayList<>();
+        for (int height = 0; height < chain.getIndex().size(); height++) {
+            blocks.add(chain.getIndex().getBlock(height));
+        }
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        directory = folder.newFolder("blocks").toPath();
+        store = new BlockStore(directory, SEGMENT_SIZE);
+        for (Block block : blocks) {
+            store.append(block);
+        }
+        store.close();
+    }
+
+    @After
+    public void tearDown() {
+        store.close();
+    }
+
+    @Test
+    public void testReopen() throws IOException {
+        assertTrue(segments().size() > 2);
+
+        store = new BlockStore(directory, SEGMENT_SIZE);
+        assertBlocks(blocks.size());
+        assertNull(store.read(StringUtil.applySha256("missing")));
+        assertEquals(-1, store.getHeight(StringUtil.applySha256("missing")));
+    }
+
+    @Test
+    public void testTornRecordIsTruncated() throws IOException {
+        Path newest = last(segments());
+        long length = Files.size(newest);
+
+        // a record cut off in the middle of its payload
+        ByteBuffer torn = ByteBuffer.allocate(HEADER_LENGTH + 10);
+        torn.putInt(500);
+        torn.putInt(0);
+        torn.flip();
+        append(newest, torn);
+
+        store = new BlockStore(directory, SEGMENT_SIZE);
+        assertBlocks(blocks.size());
+        assertEquals(length, Files.size(newest));
+
+        // the store keeps appending after the last intact block
+        store.truncate(blocks.size() - 1);
+        assertEquals(blocks.size() - 1,
+                store.append(blocks.get(blocks.size() - 1)));
+        store.close();
+        store = new BlockStore(directory, SEGMENT_SIZE);
+        assertBlocks(blocks.size());
+    }
+
+    @Test
+    public void testTornHeaderIsTruncated() throws IOException {
+        Path newest = last(segments());
+        long length = Files.size(newest);
+        append(newest, ByteBuffer.wrap(new byte[] {0, 0, 1}));
+
+        store = new BlockStore(directory, SEGMENT_SIZE);
+        assertBlocks(blocks.size());
+        assertEquals(length, Files.size(newest));
+    }
+
+    @Test
+    public void testDamagedLastRecordIsTruncated() throws IOException {
+        Path newest = last(segments());
+        long length = Files.size(newest);
+        corrupt(newest, length - 1);
+
+        store = new BlockStore(directory, SEGMENT_SIZE);
+        assertBlocks(blocks.size() - 1);
+        assertTrue(Files.size(newest) < length);
+    }
+
+    @Test
+    public void testDamageInEarlierSegmentFailsOpen() throws IOException {
+        List<Path> segments = segments();
+        corrupt(segments.get(0), HEADER_LENGTH + 1);
+        assertOpenFailsUnchanged(segments);
+    }
+
+    @Test
+    public void testDamageBeforeLastRecordFailsOpen() throws IOException {
+        List<Path> segments = segments();
+        Path newest = last(segments);
+        assertTrue(recordCount(newest) > 1);
+
+        corrupt(newest, HEADER_LENGTH + 1);
+        assertOpenFailsUnchanged(segments);
+    }
+
+    @Test
+    public void testTruncate() throws IOException {
+        store = new BlockStore(directory, SEGMENT_SIZE);
+        int segmentCount = segments().size();
+
+        store.truncate(3);
+        assertBlocks(3);
+        assertEquals(-1, store.getHeight(blocks.get(3).getHash()));
+        assertTrue(segments().size() < segmentCount);
+
+        store.append(blocks.get(3));
+        store.close();
+        store = new BlockStore(directory, SEGMENT_SIZE);
+        assertBlocks(4);
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testReadPastEnd() {
+        store = new BlockStore(directory, SEGMENT_SIZE);
+        store.read(blocks.size());
+    }
+
+    private void assertBlocks(int count) {
+        assertEquals(count, store.size());
+        for (int height = 0; height < count; height++) {
+            Block expected = blocks.get(height);
+            assertEquals(expected.getHash(), store.getHash(height));
+            assertEquals(height, store.getHeight(expected.getHash()));
+            assertArrayEquals(BlockCodec.encode(expected),
+                    BlockCodec.encode(store.read(height)));
+        }
+    }
+
+    private void assertOpenFailsUnchanged(List<Path> segments)
+            throws IOException {
+        List<byte[]> before = new ArrayList<>();
+        for (Path segment : segments) {
+            before.add(Files.readAllBytes(segment));
+        }
+
+        try {
+            store = new BlockStore(directory, SEGMENT_SIZE);
+            fail("A damaged block store was opened");
+        } catch (UncheckedIOException e) {
+            // expected
+        }
+
+        assertEquals(segments, segments());
+        for (int i = 0; i < segments.size(); i++) {
+            assertArrayEquals(before.get(i),
+                    Files.readAllBytes(segments.get(i)));
+        }
+    }
+
+    private List<Path> segments() throws IOException {
+        List<Path> paths = new ArrayList<>();
+        try (DirectoryStream<Path> stream =
+                Files.newDirectoryStream(directory, "blocks-*.dat")) {
+            stream.forEach(paths::add);
+        }
+        paths.sort(null);
+
+        return paths;
+    }
+
+    private static Path last(List<Path> paths) {
+        return paths.get(paths.size() - 1);
+    }
+
+    private static int recordCount(Path segment) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(segment));
+        int count = 0;
+        for (int offset = 0; offset < buffer.limit(); count++) {
+            offset += HEADER_LENGTH + buffer.getInt(offset);
+        }
+
+        return count;
+    }
+
+    private static void append(Path path, ByteBuffer bytes)
+            throws IOException {
+        try (FileChannel channel = FileChannel.open(path,
+                StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            channel.write(bytes);
+        }
+    }
+
+    private static void corrupt(Path path, long position) throws IOException {
+        try (FileChannel channel = FileChannel.open(path,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer b = ByteBuffer.allocate(1);
+            channel.read(b, position);
+            b.put(0, (byte) (b.get(0) ^ 0xFF));
+            b.rewind();
+            channel.write(b, position);
+        }
+    }
+}
@@ -0,0 +1,249 @@
+package com.basaki.noobchain;
+
+import java.io.IOException;
+import java.security.Security;
+import java.util.ArrayList;
+import java.util.List;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ChainIndexTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private NoobChain chain;
+
+    private Wallet walletA;
+
+    private Wallet walletB;
+
+    private Wallet walletC;
+
+    @BeforeClass
+    public static void setUpProvider() {
+        Security.addProvider(new BouncyCastleProvider());
+    }
+
+    @Before
+    public void setUp() {
+        chain = new NoobChain(new Miner(1), 1);
+        walletA = new Wallet(chain);
+        walletB = new Wallet(chain);
+        walletC = new Wallet(chain);
+        Wallet coinbase = new Wallet(chain);
+
+        Transaction genesis = new Transaction(coinbase.getPublicKey(),
+                walletA.getPublicKey(), Amount.coins(100), null);
+        genesis.generateSignature(coinbase.getPrivateKey());
+        genesis.addTransactionOutput(new TransactionOutput(
+                genesis.getRecipient(), genesis.getValue(),
+                genesis.getTransactionId()));
+        chain.addBlock(genesis);
+    }
+
+    @Test
+    public void testLookups() {
+        chain.addBlock(send(chain, walletA, walletB, Amount.coins(10)));
+        chain.addBlock(send(chain, walletB, walletC, Amount.coins(4)));
+        ChainIndex index = chain.getIndex();
+
+        assertEquals(3, index.size());
+        for (int height = 0; height < index.size(); height++) {
+            Block block = index.getBlock(height);
+            assertSame(block, index.getBlock(block.getHash()));
+            assertEquals(height, index.getHeight(block.getHash()));
+            assertIndexed(index, block, height);
+        }
+
+        // the output spent by the last block is still found
+        Transaction spent = index.getBlock(1).getTransactions().get(0);
+        assertSame(spent, index.getCreatingTransaction(
+                spent.getOutputs().get(0).getId()));
+
+        assertNull(index.getBlock(-1));
+        assertNull(index.getBlock(3));
+        String missing = StringUtil.applySha256("missing");
+        assertNull(index.getBlock(missing));
+        assertEquals(-1, index.getHeight(missing));
+        assertNull(index.getLocation(missing));
+        assertNull(index.getTransaction(missing));
+        assertNull(index.getCreatingTransaction(missing));
+    }
+
+    @Test
+    public void testLookupsAcrossReorg() {
+        chain.addBlock(send(chain, walletA, walletB, Amount.coins(10)));
+        Block former = chain.getIndex().getBlock(1);
+
+        NoobChain other = branch();
+        other.addBlock(send(other, walletA, walletC, Amount.coins(20)));
+        other.addBlock(send(other, walletA, walletC, Amount.coins(1)));
+        assertTrue(chain.acceptBlock(other.getIndex().getBlock(1)));
+        assertTrue(chain.acceptBlock(other.getIndex().getBlock(2)));
+
+        // the blocks of the former branch are no longer found
+        ChainIndex index = chain.getIndex();
+        assertEquals(3, index.size());
+        assertNotIndexed(index, former);
+        for (int height = 1; height < index.size(); height++) {
+            Block block = other.getIndex().getBlock(height);
+            assertSame(block, index.getBlock(height));
+            assertSame(block, index.getBlock(block.getHash()));
+            assertEquals(height, index.getHeight(block.getHash()));
+            assertIndexed(index, block, height);
+        }
+
+        // switching back indexes the former block again
+        NoobChain third = branch();
+        third.acceptBlock(former);
+        third.addBlock(send(third, walletB, walletC, Amount.coins(4)));
+        third.addBlock(send(third, walletA, walletC, Amount.coins(3)));
+        assertTrue(chain.acceptBlock(third.getIndex().getBlock(2)));
+        assertTrue(chain.acceptBlock(third.getIndex().getBlock(3)));
+
+        assertEquals(4, index.size());
+        assertSame(former, index.getBlock(1));
+        assertIndexed(index, former, 1);
+        for (int height = 1; height < 3; height++) {
+            assertNotIndexed(index, other.getIndex().getBlock(height));
+        }
+    }
+
+    @Test
+    public void testRemoveTip() {
+        ChainIndex index = new ChainIndex();
+        assertNull(index.removeTip());
+
+        chain.addBlock(send(chain, walletA, walletB, Amount.coins(10)));
+        Block genesis = chain.getIndex().getBlock(0);
+        Block block = chain.getIndex().getBlock(1);
+        index.add(genesis);
+        assertEquals(1, index.add(block));
+
+        assertSame(block, index.removeTip());
+        assertEquals(1, index.size());
+        assertNotIndexed(index, block);
+        assertIndexed(index, genesis, 0);
+
+        assertEquals(1, index.add(block));
+        assertIndexed(index, block, 1);
+    }
+
+    @Test
+    public void testLookupsInStoredBlocks() throws IOException {
+        chain.addBlock(send(chain, walletA, walletB, Amount.coins(10)));
+        chain.addBlock(send(chain, walletB, walletC, Amount.coins(4)));
+
+        try (BlockStore store = new BlockStore(
+                folder.newFolder("blocks").toPath())) {
+            for (int height = 0; height < chain.getIndex().size();
+                    height++) {
+                store.append(chain.getIndex().getBlock(height));
+            }
+
+            ChainIndex index = ChainIndex.rebuild(store);
+            assertEquals(3, index.size());
+            for (int height = 0; height < index.size(); height++) {
+                Block block = chain.getIndex().getBlock(height);
+                assertEquals(block.getHash(),
+                        index.getBlock(height).getHash());
+                assertEquals(height, index.getHeight(block.getHash()));
+                assertLocated(index, block, height);
+            }
+
+            // a stored block taken off the chain is no longer found
+            Block tip = chain.getIndex().getBlock(2);
+            assertEquals(tip.getHash(), index.removeTip().getHash());
+            assertEquals(-1, index.getHeight(tip.getHash()));
+            for (Transaction transaction : tip.getTransactions()) {
+                assertNull(index.getLocation(transaction.getTransactionId()));
+            }
+
+            assertEquals(2, index.add(tip));
+            assertIndexed(index, tip, 2);
+        }
+    }
+
+    private static void assertIndexed(ChainIndex index, Block block,
+            int height) {
+        List<Transaction> transactions = block.getTransactions();
+        for (int i = 0; i < transactions.size(); i++) {
+            Transaction transaction = transactions.get(i);
+            String id = transaction.getTransactionId();
+
+            assertSame(transaction, index.getTransaction(id));
+            for (TransactionOutput output : transaction.getOutputs()) {
+                assertSame(transaction,
+                        index.getCreatingTransaction(output.getId()));
+            }
+        }
+        assertLocated(index, block, height);
+    }
+
+    private static void assertLocated(ChainIndex index, Block block,
+            int height) {
+        List<Transaction> transactions = block.getTransactions();
+        for (int i = 0; i < transactions.size(); i++) {
+            String id = transactions.get(i).getTransactionId();
+
+            ChainIndex.Location location = index.getLocation(id);
+            assertEquals(height, location.getHeight());
+            assertEquals(i, location.getIndex());
+            assertEquals(id, index.getTransaction(id).getTransactionId());
+        }
+    }
+
+    private static void assertNotIndexed(ChainIndex index, Block block) {
+        assertNull(index.getBlock(block.getHash()));
+        assertEquals(-1, index.getHeight(block.getHash()));
+        for (Transaction transaction : block.getTransactions()) {
+            assertNull(index.getLocation(transaction.getTransactionId()));
+            assertNull(index.getTransaction(transaction.getTransactionId()));
+            for (TransactionOutput output : transaction.getOutputs()) {
+                assertNull(index.getCreatingTransaction(output.getId()));
+            }
+        }
+    }
+
+    /**
+     * Creates a chain which shares the genesis block of the chain under
+     * test.
+     */
+    private NoobChain branch() {
+        NoobChain other = new NoobChain(new Miner(1), 1);
+        assertTrue(other.acceptBlock(chain.getIndex().getBlock(0)));
+
+        return other;
+    }
+
+    /**
+     * Creates a transaction from the unspent outputs of a given chain, the
+     * wallets only track the chain under test.
+     */
+    private static Transaction send(NoobChain chain, Wallet from, Wallet to,
+            long value) {
+        List<TransactionInput> inputs = new ArrayList<>();
+        long inputSum = 0;
+        for (TransactionOutput output : chain.getUtxos().selectOutputs(
+                from.getAddress(), value, CoinSelector.largestFirst())) {
+            inputs.add(new TransactionInput(output.getId()));
+            inputSum += output.getValue();
+        }
+
+        Transaction transaction = new Transaction(from.getPublicKey(),
+                to.getPublicKey(), value, inputSum - value, inputs);
+        transaction.generateSignature(from.getPrivateKey());
+
+        return transaction;
+    }
+}
@@ -0,0 +1,152 @@
+package com.basaki.noobchain;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class CoinSelectorTest {
+
+    @Test
+    public void testLargestFirst() {
+        NavigableSet<TransactionOutput> outputs = outputs(1, 2, 5, 7, 10);
+        CoinSelector selector = CoinSelector.largestFirst();
+
+        assertEquals(Collections.singletonList(10L),
+                values(selector.select(outputs, Amount.coins(4))));
+        assertEquals(Arrays.asList(10L, 7L, 5L),
+                values(selector.select(outputs, Amount.coins(18))));
+        assertEquals(Arrays.asList(10L, 7L, 5L, 2L, 1L),
+                values(selector.select(outputs, Amount.coins(25))));
+        assertNull(selector.select(outputs, Amount.coins(26)));
+    }
+
+    @Test
+    public void testSmallestSufficient() {
+        NavigableSet<TransactionOutput> outputs = outputs(1, 2, 5, 7, 10);
+        CoinSelector selector = CoinSelector.smallestSufficient();
+
+        assertEquals(Collections.singletonList(5L),
+                values(selector.select(outputs, Amount.coins(3))));
+        assertEquals(Collections.singletonList(7L),
+                values(selector.select(outputs, Amount.coins(7))));
+
+        // no single output covers the amount, the largest ones are spent
+        assertEquals(Arrays.asList(10L, 7L),
+                values(selector.select(outputs, Amount.coins(11))));
+        assertNull(selector.select(outputs, Amount.coins(26)));
+    }
+
+    @Test
+    public void testBranchAndBoundExactMatch() {
+        NavigableSet<TransactionOutput> outputs = outputs(1, 2, 5, 7, 10);
+        CoinSelector selector = CoinSelector.branchAndBound();
+
+        assertEquals(Collections.singletonList(7L),
+                values(selector.select(outputs, Amount.coins(7))));
+        assertEquals(Arrays.asList(7L, 1L),
+                values(selector.select(outputs, Amount.coins(8))));
+        assertEquals(Arrays.asList(10L, 5L, 1L),
+                values(selector.select(outputs, Amount.coins(16))));
+        assertEquals(Arrays.asList(10L, 7L, 5L, 2L, 1L),
+                values(selector.select(outputs, Amount.coins(25))));
+    }
+
+    @Test
+    public void testBranchAndBoundFallback() {
+        NavigableSet<TransactionOutput> outputs = outputs(3, 5, 9);
+        CoinSelector selector = CoinSelector.branchAndBound();
+
+        // no outputs add up to the amount
+        assertEquals(Collections.singletonList(9L),
+                values(selector.select(outputs, Amount.coins(4))));
+        assertEquals(Arrays.asList(9L, 5L),
+                values(selector.select(outputs, Amount.coins(13))));
+        assertNull(selector.select(outputs, Amount.coins(18)));
+
+        // the search gives up before it finds the match
+        CoinSelector bounded = new BranchAndBoundSelector(2,
+                CoinSelector.largestFirst());
+        assertEquals(Collections.singletonList(9L),
+                values(bounded.select(outputs, Amount.coins(8))));
+        assertEquals(Arrays.asList(5L, 3L), values(CoinSelector
+                .branchAndBound().select(outputs, Amount.coins(8))));
+    }
+
+    @Test
+    public void testBranchAndBoundFindsEveryExactMatch() {
+        Random random = new Random(1);
+        for (int round = 0; round < 20; round++) {
+            long[] coins = new long[10];
+            for (int i = 0; i < coins.length; i++) {
+                coins[i] = 1 + random.nextInt(20);
+            }
+            NavigableSet<TransactionOutput> outputs = outputs(coins);
+            long sum = Arrays.stream(coins).sum();
+
+            for (long value = 1; value <= sum; value++) {
+                List<TransactionOutput> selected = new BranchAndBoundSelector(
+                        BranchAndBoundSelector.DEFAULT_MAX_TRIES,
+                        (o, v) -> null).select(outputs, Amount.coins(value));
+                if (hasSubsetSum(coins, value)) {
+                    Set<String> ids = new HashSet<>();
+                    long total = 0;
+                    for (TransactionOutput output : selected) {
+                        assertTrue(outputs.contains(output));
+                        assertTrue(ids.add(output.getId()));
+                        total += output.getValue();
+                    }
+                    assertEquals(Amount.coins(value), total);
+                } else {
+                    assertNull(selected);
+                }
+            }
+        }
+    }
+
+    private static boolean hasSubsetSum(long[] coins, long value) {
+        boolean[] sums = new boolean[(int) value + 1];
+        sums[0] = true;
+        for (long coin : coins) {
+            for (int sum = (int) value; sum >= coin; sum--) {
+                sums[sum] |= sums[sum - (int) coin];
+            }
+        }
+
+        return sums[(int) value];
+    }
+
+    /**
+     * Creates outputs of the given numbers of coins, the same value may
+     * occur more than once.
+     */
+    private static NavigableSet<TransactionOutput> outputs(long... coins) {
+        NavigableSet<TransactionOutput> outputs =
+                new TreeSet<>(CoinSelector.BY_VALUE);
+        for (int i = 0; i < coins.length; i++) {
+            outputs.add(new TransactionOutput(
+                    StringUtil.applySha256("output " + i), null,
+                    Amount.coins(coins[i]), null));
+        }
+
+        return outputs;
+    }
+
+    private static List<Long> values(List<TransactionOutput> outputs) {
+        Long[] values = new Long[outputs.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = outputs.get(i).getValue() / Amount.COIN;
+        }
+
+        return Arrays.asList(values);
+    }
+}
@@ -0,0 +1,238 @@
+package com.basaki.noobchain;
+
+import java.security.Security;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class MempoolTest {
+
+    private NoobChain chain;
+
+    private Mempool mempool;
+
+    private Wallet walletA;
+
+    private Wallet walletB;
+
+    private Wallet walletC;
+
+    @BeforeClass
+    public static void setUpProvider() {
+        Security.addProvider(new BouncyCastleProvider());
+    }
+
+    @Before
+    public void setUp() {
+        chain = new NoobChain(new Miner(1), 1);
+        walletA = new Wallet(chain);
+        walletB = new Wallet(chain);
+        walletC = new Wallet(chain);
+        Wallet coinbase = new Wallet(chain);
+
+        Transaction genesis = new Transaction(coinbase.getPublicKey(),
+                walletA.getPublicKey(), Amount.coins(100), null);
+        genesis.generateSignature(coinbase.getPrivateKey());
+        genesis.addTransactionOutput(new TransactionOutput(
+                genesis.getRecipient(), genesis.getValue(),
+                genesis.getTransactionId()));
+        chain.addBlock(genesis);
+
+        // wallet A ends up with two outputs, B and C with one each
+        chain.addBlock(send(walletA, walletB, Amount.coins(30)));
+        chain.addBlock(send(walletB, walletC, Amount.coins(10)));
+        chain.addBlock(send(walletC, walletA, Amount.coins(5)));
+
+        mempool = new Mempool(chain.getUtxos());
+    }
+
+    @Test
+    public void testSubmit() {
+        assertTrue(mempool.submit(walletA.sendFunds(walletB.getPublicKey(),
+                Amount.coins(1))));
+        assertEquals(1, mempool.size());
+
+        assertFalse(mempool.submit(null));
+        assertEquals(1, mempool.size());
+    }
+
+    @Test
+    public void testRejectInvalidTransactions() {
+        // spends an output which doesn't exist
+        Transaction unknown = new Transaction(walletA.getPublicKey(),
+                walletB.getPublicKey(), Amount.coins(1), 0,
+                Collections.singletonList(new TransactionInput(
+                        StringUtil.applySha256("missing"))));
+        unknown.generateSignature(walletA.getPrivateKey());
+        assertFalse(mempool.submit(unknown));
+
+        // the change doesn't match the inputs
+        Transaction transaction = send(walletB, walletC, Amount.coins(1));
+        Transaction change = new Transaction(walletB.getPublicKey(),
+                walletC.getPublicKey(), Amount.coins(1), Amount.coins(2),
+                transaction.getInputs());
+        change.generateSignature(walletB.getPrivateKey());
+        assertFalse(mempool.submit(change));
+
+        // signed by another key
+        Transaction forged = new Transaction(walletB.getPublicKey(),
+                walletC.getPublicKey(), transaction.getValue(),
+                transaction.getChange(), transaction.getInputs());
+        forged.generateSignature(walletC.getPrivateKey());
+        assertFalse(mempool.submit(forged));
+
+        assertEquals(0, mempool.size());
+        assertTrue(mempool.submit(transaction));
+    }
+
+    @Test
+    public void testClaimConflict() {
+        Transaction first = send(walletB, walletC, Amount.coins(1));
+        Transaction second = send(walletB, walletA, Amount.coins(2));
+
+        assertTrue(mempool.submit(first));
+        assertFalse(mempool.submit(second));
+        assertFalse(mempool.submit(first));
+        assertEquals(1, mempool.size());
+    }
+
+    @Test
+    public void testPartialClaimIsUndone() {
+        // spends both outputs of wallet A
+        Transaction both = send(walletA, walletB, Amount.coins(72));
+        assertEquals(2, both.getInputs().size());
+        Transaction one = new Transaction(walletA.getPublicKey(),
+                walletB.getPublicKey(), Amount.coins(70), 0,
+                both.getInputs().subList(0, 1));
+        one.generateSignature(walletA.getPrivateKey());
+
+        assertTrue(mempool.submit(one));
+        assertFalse(mempool.submit(both));
+
+        // the input of the rejected transaction which didn't conflict
+        // isn't left claimed
+        Transaction other = new Transaction(walletA.getPublicKey(),
+                walletB.getPublicKey(), Amount.coins(5), 0,
+                both.getInputs().subList(1, 2));
+        other.generateSignature(walletA.getPrivateKey());
+        assertTrue(mempool.submit(other));
+    }
+
+    @Test
+    public void testDrainInPriorityOrder() {
+        Transaction small = send(walletC, walletA, Amount.coins(3));
+        Transaction large = send(walletA, walletC, Amount.coins(72));
+        Transaction medium = send(walletB, walletA, Amount.coins(4));
+        mempool.submit(small);
+        mempool.submit(large);
+        mempool.submit(medium);
+
+        assertEquals(Arrays.asList(large, medium),
+                mempool.drain(2, Integer.MAX_VALUE));
+        assertEquals(Collections.singletonList(small),
+                mempool.drain(2, Integer.MAX_VALUE));
+        assertTrue(mempool.drain(2, Integer.MAX_VALUE).isEmpty());
+    }
+
+    @Test
+    public void testDrainSkipsWhatDoesNotFitByteBudget() {
+        Transaction small = send(walletC, walletA, Amount.coins(3));
+        Transaction large = send(walletA, walletC, Amount.coins(72));
+        Transaction medium = send(walletB, walletA, Amount.coins(4));
+        mempool.submit(small);
+        mempool.submit(large);
+        mempool.submit(medium);
+
+        // the large transaction has two inputs and doesn't fit, the medium
+        // one uses up the budget
+        int budget = BlockCodec.getEncodedLength(medium);
+        assertTrue(BlockCodec.getEncodedLength(large) > budget);
+
+        assertEquals(Collections.singletonList(medium),
+                mempool.drain(10, budget));
+        assertEquals(2, mempool.size());
+        assertEquals(Arrays.asList(large, small),
+                mempool.drain(10, Integer.MAX_VALUE));
+    }
+
+    @Test
+    public void testReleaseAndRestore() {
+        Transaction first = send(walletB, walletC, Amount.coins(1));
+        Transaction conflicting = send(walletB, walletA, Amount.coins(2));
+        mempool.submit(first);
+
+        // drained transactions keep their inputs claimed
+        List<Transaction> drained = mempool.drain(10, Integer.MAX_VALUE);
+        assertEquals(0, mempool.size());
+        assertFalse(mempool.submit(conflicting));
+
+        mempool.restore(drained);
+        assertEquals(1, mempool.size());
+        assertFalse(mempool.submit(conflicting));
+
+        // once released, e.g., discarded from a block, the inputs are free
+        mempool.release(mempool.drain(10, Integer.MAX_VALUE));
+        assertTrue(mempool.submit(conflicting));
+    }
+
+    @Test
+    public void testAssembleBlock() {
+        BlockAssembler assembler = new BlockAssembler(chain, mempool, 2,
+                Integer.MAX_VALUE);
+        assertNull(assembler.assembleBlock());
+
+        Transaction small = send(walletC, walletA, Amount.coins(3));
+        Transaction large = send(walletA, walletC, Amount.coins(72));
+        Transaction medium = send(walletB, walletA, Amount.coins(4));
+        mempool.submit(small);
+        mempool.submit(large);
+        mempool.submit(medium);
+
+        Block block = assembler.assembleBlock();
+        assertEquals(Arrays.asList(large, medium), block.getTransactions());
+        assertEquals(block.getHash(), chain.getIndex().getBlock(4).getHash());
+        assertEquals(1, mempool.size());
+
+        block = assembler.assembleBlock();
+        assertEquals(Collections.singletonList(small),
+                block.getTransactions());
+        assertEquals(0, mempool.size());
+        assertEquals(Amount.coins(10), chain.getUtxos().getBalance(
+                walletA.getAddress()));
+        assertTrue(chain.validate(true).isValid());
+
+        // the spent inputs are released, spending them again fails on the
+        // unspent outputs instead
+        assertFalse(mempool.submit(medium));
+    }
+
+    /**
+     * Creates a transaction from the unspent outputs of the chain, without
+     * the wallet's reservations.
+     */
+    private Transaction send(Wallet from, Wallet to, long value) {
+        List<TransactionInput> inputs = new ArrayList<>();
+        long inputSum = 0;
+        for (TransactionOutput output : chain.getUtxos().selectOutputs(
+                from.getAddress(), value, CoinSelector.largestFirst())) {
+            inputs.add(new TransactionInput(output.getId()));
+            inputSum += output.getValue();
+        }
+
+        Transaction transaction = new Transaction(from.getPublicKey(),
+                to.getPublicKey(), value, inputSum - value, inputs);
+        transaction.generateSignature(from.getPrivateKey());
+
+        return transaction;
+    }
+}
@@ -0,0 +1,67 @@
+package com.basaki.noobchain;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class MerkleAccumulatorTest {
+
+    private static final int MAX_LEAF_COUNT = 70;
+
+    @Test
+    public void testRootMatchesTree() {
+        List<Transaction> transactions =
+                MerkleTreeTest.transactions(MAX_LEAF_COUNT);
+
+        // odd and even counts, powers of two and their neighbours
+        MerkleAccumulator accumulator = new MerkleAccumulator();
+        for (int count = 1; count <= MAX_LEAF_COUNT; count++) {
+            accumulator.add(transactions.get(count - 1).getTransactionId());
+
+            assertEquals(count, accumulator.getSize());
+            assertEquals("Leaf count " + count,
+                    new MerkleTree(transactions.subList(0, count))
+                            .getRootHash(),
+                    accumulator.getRootHash());
+        }
+    }
+
+    @Test
+    public void testRootIsFoldedAgainAfterAdd() {
+        List<Transaction> transactions = MerkleTreeTest.transactions(3);
+        MerkleAccumulator accumulator = new MerkleAccumulator();
+        accumulator.add(transactions.get(0).getTransactionId());
+        accumulator.add(transactions.get(1).getTransactionId());
+        String root = accumulator.getRootHash();
+
+        accumulator.add(transactions.get(2).getTransactionId());
+        assertEquals(new MerkleTree(transactions).getRootHash(),
+                accumulator.getRootHash());
+        assertEquals(new MerkleTree(transactions.subList(0, 2)).getRootHash(),
+                root);
+    }
+
+    @Test
+    public void testEmpty() {
+        assertEquals(new MerkleTree(MerkleTreeTest.transactions(0))
+                .getRootHash(), new MerkleAccumulator().getRootHash());
+    }
+
+    @Test
+    public void testDecodedBlockHasSameRoot() {
+        Block block = new Block("0");
+        for (Transaction transaction : MerkleTreeTest.transactions(5)) {
+            block.addTransaction(transaction, null);
+        }
+        block.mineBlock(1, new Miner(1));
+
+        // a block read back has no accumulator, mining it again rebuilds it
+        Block decoded = new Block(block.getHash(), block.getPreviousHash(),
+                block.getTimeStamp(), block.getNonce(), block.getMerkleRoot(),
+                new ArrayList<>(block.getTransactions()));
+        decoded.mineBlock(1, new Miner(1));
+        assertEquals(block.getMerkleRoot(), decoded.getMerkleRoot());
+    }
+}
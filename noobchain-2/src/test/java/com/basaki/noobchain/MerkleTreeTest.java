@@ -0,0 +1,112 @@
+package com.basaki.noobchain;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class MerkleTreeTest {
+
+    private static final int MAX_LEAF_COUNT = 17;
+
+    @Test
+    public void testEveryProofVerifies() {
+        for (int count = 1; count <= MAX_LEAF_COUNT; count++) {
+            List<Transaction> transactions = transactions(count);
+            MerkleTree tree = new MerkleTree(transactions);
+            String root = tree.getRootHash();
+
+            for (int i = 0; i < count; i++) {
+                String id = transactions.get(i).getTransactionId();
+                assertTrue("Leaf " + i + " of " + count,
+                        MerkleTree.verify(id, tree.getProof(i), root));
+            }
+        }
+    }
+
+    @Test
+    public void testProofOfAnotherTransactionFails() {
+        List<Transaction> transactions = transactions(5);
+        MerkleTree tree = new MerkleTree(transactions);
+        String root = tree.getRootHash();
+        String id = transactions.get(2).getTransactionId();
+
+        assertFalse(MerkleTree.verify(id, tree.getProof(3), root));
+        assertFalse(MerkleTree.verify(StringUtil.applySha256("other"),
+                tree.getProof(2), root));
+        assertFalse(MerkleTree.verify(id, tree.getProof(2),
+                new MerkleTree(transactions(4)).getRootHash()));
+    }
+
+    @Test
+    public void testTamperedProofFails() {
+        List<Transaction> transactions = transactions(6);
+        MerkleTree tree = new MerkleTree(transactions);
+        String root = tree.getRootHash();
+        String id = transactions.get(4).getTransactionId();
+        MerkleTree.Proof proof = tree.getProof(4);
+
+        List<byte[]> siblings = new ArrayList<>(proof.getSiblings());
+        byte[] sibling = siblings.get(0).clone();
+        sibling[0] ^= 1;
+        siblings.set(0, sibling);
+        assertFalse(MerkleTree.verify(id, new MerkleTree.Proof(4, 6, siblings),
+                root));
+
+        // a missing or an extra sibling
+        siblings = new ArrayList<>(proof.getSiblings());
+        assertFalse(MerkleTree.verify(id, new MerkleTree.Proof(4, 6,
+                siblings.subList(0, siblings.size() - 1)), root));
+        siblings.add(sibling);
+        assertFalse(MerkleTree.verify(id, new MerkleTree.Proof(4, 6, siblings),
+                root));
+
+        // an index outside the tree
+        assertFalse(MerkleTree.verify(id, new MerkleTree.Proof(6, 6,
+                proof.getSiblings()), root));
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testProofPastEnd() {
+        new MerkleTree(transactions(3)).getProof(3);
+    }
+
+    @Test
+    public void testBlockProofsFollowAddedTransactions() {
+        Block block = new Block("0");
+        for (Transaction transaction : transactions(3)) {
+            block.addTransaction(transaction, null);
+        }
+        block.mineBlock(1, new Miner(1));
+        MerkleTree.Proof proof = block.getMerkleProof(2);
+        assertTrue(MerkleTree.verify(
+                block.getTransactions().get(2).getTransactionId(), proof,
+                block.getMerkleRoot()));
+
+        // the proofs cover a transaction added after the first proof
+        Transaction added = transactions(4).get(3);
+        block.addTransaction(added, null);
+        block.mineBlock(1, new Miner(1));
+        assertEquals(4, block.getMerkleProof(3).getLeafCount());
+        assertTrue(MerkleTree.verify(added.getTransactionId(),
+                block.getMerkleProof(3), block.getMerkleRoot()));
+        assertTrue(MerkleTree.verify(
+                block.getTransactions().get(2).getTransactionId(),
+                block.getMerkleProof(2), block.getMerkleRoot()));
+    }
+
+    static List<Transaction> transactions(int count) {
+        List<Transaction> transactions = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            transactions.add(new Transaction(
+                    StringUtil.applySha256("transaction " + i), null, null,
+                    Amount.coins(1), 0, null, new ArrayList<>(),
+                    new ArrayList<>()));
+        }
+
+        return transactions;
+    }
+}
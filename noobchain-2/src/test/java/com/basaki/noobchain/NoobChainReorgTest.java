@@ -0,0 +1,238 @@
+package com.basaki.noobchain;
+
+import java.security.Security;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class NoobChainReorgTest {
+
+    private NoobChain chain;
+
+    private Wallet walletA;
+
+    private Wallet walletB;
+
+    private Wallet walletC;
+
+    @BeforeClass
+    public static void setUpProvider() {
+        Security.addProvider(new BouncyCastleProvider());
+    }
+
+    @Before
+    public void setUp() {
+        chain = new NoobChain(new Miner(1), 1);
+        walletA = new Wallet(chain);
+        walletB = new Wallet(chain);
+        walletC = new Wallet(chain);
+        Wallet coinbase = new Wallet(chain);
+
+        Transaction genesis = new Transaction(coinbase.getPublicKey(),
+                walletA.getPublicKey(), Amount.coins(100), null);
+        genesis.generateSignature(coinbase.getPrivateKey());
+        genesis.addTransactionOutput(new TransactionOutput(
+                genesis.getRecipient(), genesis.getValue(),
+                genesis.getTransactionId()));
+        chain.addBlock(genesis);
+    }
+
+    @Test
+    public void testSwitchToHeavierBranch() {
+        chain.addBlock(send(chain, walletA, walletB, Amount.coins(10)));
+
+        NoobChain other = branch();
+        other.addBlock(send(other, walletA, walletC, Amount.coins(20)));
+        other.addBlock(send(other, walletA, walletC, Amount.coins(1)));
+
+        // a branch of the same length doesn't replace the chain
+        assertTrue(chain.acceptBlock(other.getIndex().getBlock(1)));
+        assertEquals(2, chain.getIndex().size());
+        assertBalances(Amount.coins(90), Amount.coins(10), 0);
+
+        assertTrue(chain.acceptBlock(other.getIndex().getBlock(2)));
+        assertEquals(3, chain.getIndex().size());
+        assertSame(other.getIndex().getBlock(2), chain.getIndex().getBlock(2));
+        assertBalances(Amount.coins(79), 0, Amount.coins(21));
+        assertEquals(outputIds(other), outputIds(chain));
+        assertTrue(chain.validate(true).isValid());
+    }
+
+    @Test
+    public void testSwitchBackToFormerBranch() {
+        chain.addBlock(send(chain, walletA, walletB, Amount.coins(10)));
+        Block former = chain.getIndex().getBlock(1);
+
+        NoobChain other = branch();
+        other.addBlock(send(other, walletA, walletC, Amount.coins(20)));
+        other.addBlock(send(other, walletA, walletC, Amount.coins(1)));
+        chain.acceptBlock(other.getIndex().getBlock(1));
+        chain.acceptBlock(other.getIndex().getBlock(2));
+
+        NoobChain third = branch();
+        third.acceptBlock(former);
+        third.addBlock(send(third, walletB, walletC, Amount.coins(4)));
+        third.addBlock(send(third, walletA, walletC, Amount.coins(3)));
+
+        assertTrue(chain.acceptBlock(third.getIndex().getBlock(2)));
+        assertTrue(chain.acceptBlock(third.getIndex().getBlock(3)));
+        assertEquals(4, chain.getIndex().size());
+        assertSame(former, chain.getIndex().getBlock(1));
+        assertBalances(Amount.coins(87), Amount.coins(6), Amount.coins(7));
+        assertEquals(outputIds(third), outputIds(chain));
+        assertTrue(chain.validate(true).isValid());
+    }
+
+    @Test
+    public void testInvalidBranchRestoresChain() {
+        chain.addBlock(send(chain, walletA, walletB, Amount.coins(10)));
+        chain.addBlock(send(chain, walletB, walletC, Amount.coins(5)));
+        Block tip = chain.getIndex().getBlock(2);
+        Set<String> before = outputIds(chain);
+
+        // the branch spends an output which only exists on its own chain
+        NoobChain other = branch();
+        other.getUtxos().add(new TransactionOutput(walletA.getPublicKey(),
+                Amount.coins(1000), StringUtil.applySha256("forged")));
+        for (int i = 0; i < 3; i++) {
+            other.addBlock(send(other, walletA, walletB,
+                    Amount.coins(200 - i * 10)));
+        }
+
+        assertTrue(chain.acceptBlock(other.getIndex().getBlock(1)));
+        assertTrue(chain.acceptBlock(other.getIndex().getBlock(2)));
+        assertFalse(chain.acceptBlock(other.getIndex().getBlock(3)));
+
+        assertEquals(3, chain.getIndex().size());
+        assertSame(tip, chain.getIndex().getBlock(2));
+        assertEquals(before, outputIds(chain));
+        assertBalances(Amount.coins(90), Amount.coins(5), Amount.coins(5));
+        assertTrue(chain.validate(true).isValid());
+
+        // the invalid block isn't accepted again
+        assertFalse(chain.acceptBlock(other.getIndex().getBlock(1)));
+    }
+
+    @Test
+    public void testBlockWithMalformedSignatureIsRejected() {
+        Block tip = chain.getIndex().getBlock(0);
+        List<Transaction> transactions = new ArrayList<>();
+        for (int i = 1; i <= 4; i++) {
+            Transaction transaction =
+                    send(chain, walletA, walletB, Amount.coins(i));
+            transactions.add(withSignature(transaction,
+                    transaction.getSignature()));
+        }
+        // enough transactions for the signatures to be verified in parallel
+        transactions.set(2, withSignature(transactions.get(2),
+                new byte[] {0x30, 0x7f, 0x02}));
+
+        Block block = new Block(null, tip.getHash(), 0, 0, null,
+                transactions);
+        block.mineBlock(1, new Miner(1));
+
+        assertEquals("Transaction(2) signature is invalid.",
+                new ChainValidator(1).checkBlock(tip, block, 1).getReason());
+        assertFalse(chain.acceptBlock(block));
+        assertEquals(1, chain.getIndex().size());
+        assertSame(tip, chain.getIndex().getBlock(0));
+        assertBalances(Amount.coins(100), 0, 0);
+    }
+
+    @Test
+    public void testGenesisWithoutProofOfWorkIsRejected() {
+        Block genesis = chain.getIndex().getBlock(0);
+        Block unmined = null;
+        for (int nonce = 0; unmined == null; nonce++) {
+            Block block = new Block(null, genesis.getPreviousHash(),
+                    genesis.getTimeStamp(), nonce, genesis.getMerkleRoot(),
+                    genesis.getTransactions());
+            String hash = block.calculateHash();
+            if (!hash.startsWith("0")) {
+                unmined = new Block(hash, genesis.getPreviousHash(),
+                        genesis.getTimeStamp(), nonce,
+                        genesis.getMerkleRoot(), genesis.getTransactions());
+            }
+        }
+
+        NoobChain other = new NoobChain(new Miner(1), 1);
+        assertFalse(other.acceptBlock(unmined));
+        assertEquals(0, other.getIndex().size());
+
+        assertTrue(other.acceptBlock(genesis));
+        assertEquals(1, other.getIndex().size());
+    }
+
+    /**
+     * Creates a chain which shares the genesis block of the chain under
+     * test.
+     */
+    private NoobChain branch() {
+        NoobChain other = new NoobChain(new Miner(1), 1);
+        assertTrue(other.acceptBlock(chain.getIndex().getBlock(0)));
+
+        return other;
+    }
+
+    /**
+     * Creates a transaction from the unspent outputs of a given chain, the
+     * wallets only track the chain under test.
+     */
+    private static Transaction send(NoobChain chain, Wallet from, Wallet to,
+            long value) {
+        List<TransactionInput> inputs = new ArrayList<>();
+        long inputSum = 0;
+        for (TransactionOutput output : chain.getUtxos().selectOutputs(
+                from.getAddress(), value, CoinSelector.largestFirst())) {
+            inputs.add(new TransactionInput(output.getId()));
+            inputSum += output.getValue();
+        }
+
+        Transaction transaction = new Transaction(from.getPublicKey(),
+                to.getPublicKey(), value, inputSum - value, inputs);
+        transaction.generateSignature(from.getPrivateKey());
+
+        return transaction;
+    }
+
+    /**
+     * Copies a transaction with its id set and another signature.
+     */
+    private static Transaction withSignature(Transaction transaction,
+            byte[] signature) {
+        return new Transaction(transaction.calculateHash(),
+                transaction.getSender(), transaction.getRecipient(),
+                transaction.getValue(), transaction.getChange(), signature,
+                transaction.getInputs(), transaction.getOutputs());
+    }
+
+    private void assertBalances(long a, long b, long c) {
+        assertEquals(a, chain.getUtxos().getBalance(walletA.getAddress()));
+        assertEquals(b, chain.getUtxos().getBalance(walletB.getAddress()));
+        assertEquals(c, chain.getUtxos().getBalance(walletC.getAddress()));
+
+        // the wallets follow the chain's block events
+        assertEquals(a, walletA.getBalance());
+        assertEquals(b, walletB.getBalance());
+        assertEquals(c, walletC.getBalance());
+    }
+
+    private static Set<String> outputIds(NoobChain chain) {
+        Set<String> ids = new HashSet<>();
+        for (TransactionOutput output : chain.getUtxos().values()) {
+            ids.add(output.getId());
+        }
+
+        return ids;
+    }
+}
@@ -0,0 +1,137 @@
+package com.basaki.noobchain;
+
+import java.nio.file.Path;
+import java.security.Security;
+import java.util.ArrayList;
+import java.util.List;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class NoobChainSnapshotTest {
+
+    private static final int SNAPSHOT_INTERVAL = 3;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path blocks;
+
+    private Path snapshots;
+
+    private final List<BlockStore> stores = new ArrayList<>();
+
+    private Wallet walletA;
+
+    private Wallet walletB;
+
+    @BeforeClass
+    public static void setUpProvider() {
+        Security.addProvider(new BouncyCastleProvider());
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        blocks = folder.newFolder("blocks").toPath();
+        snapshots = folder.getRoot().toPath().resolve("snapshots");
+    }
+
+    @After
+    public void tearDown() {
+        for (BlockStore store : stores) {
+            store.close();
+        }
+    }
+
+    @Test
+    public void testLoadReadsOnlyBlocksAfterSnapshot() {
+        NoobChain chain = open();
+        walletA = new Wallet(chain);
+        walletB = new Wallet(chain);
+        Wallet coinbase = new Wallet(chain);
+
+        Transaction genesis = new Transaction(coinbase.getPublicKey(),
+                walletA.getPublicKey(), Amount.coins(100), null);
+        genesis.generateSignature(coinbase.getPrivateKey());
+        genesis.addTransactionOutput(new TransactionOutput(
+                genesis.getRecipient(), genesis.getValue(),
+                genesis.getTransactionId()));
+        chain.addBlock(genesis);
+        for (int i = 0; i < 7; i++) {
+            chain.addBlock(walletA.sendFunds(walletB.getPublicKey(),
+                    Amount.coins(1)));
+        }
+        String transactionId = chain.getIndex().getBlock(1)
+                .getTransactions().get(0).getTransactionId();
+        closeStores();
+
+        NoobChain loaded = open();
+        assertEquals(8, loaded.getIndex().size());
+        assertEquals(chain.getIndex().getBlock(7).getHash(),
+                loaded.getIndex().getBlock(7).getHash());
+        assertEquals(Amount.coins(93),
+                loaded.getUtxos().getBalance(walletA.getAddress()));
+        assertEquals(Amount.coins(7),
+                loaded.getUtxos().getBalance(walletB.getAddress()));
+
+        // the blocks of the snapshot at height 6 are read when they're
+        // looked up, the block after it is kept
+        assertNotSame(loaded.getIndex().getBlock(6),
+                loaded.getIndex().getBlock(6));
+        assertSame(loaded.getIndex().getBlock(7),
+                loaded.getIndex().getBlock(7));
+
+        assertNotNull(loaded.getIndex().getTransaction(transactionId));
+        assertEquals(1, loaded.getIndex().getLocation(transactionId)
+                .getHeight());
+        assertTrue(loaded.validate().isValid());
+        assertTrue(loaded.validate(true).isValid());
+    }
+
+    @Test
+    public void testRebuildIndexesStoredBlocks() {
+        testLoadReadsOnlyBlocksAfterSnapshot();
+        closeStores();
+
+        BlockStore store = new BlockStore(blocks, 4096);
+        stores.add(store);
+        ChainIndex index = ChainIndex.rebuild(store);
+
+        assertEquals(store.size(), index.size());
+        for (int height = 0; height < store.size(); height++) {
+            Block block = store.read(height);
+            assertEquals(height, index.getHeight(block.getHash()));
+            assertEquals(block.getHash(),
+                    index.getBlock(block.getHash()).getHash());
+            for (Transaction transaction : block.getTransactions()) {
+                assertEquals(height, index.getLocation(
+                        transaction.getTransactionId()).getHeight());
+            }
+        }
+    }
+
+    private NoobChain open() {
+        BlockStore store = new BlockStore(blocks, 4096);
+        stores.add(store);
+
+        return new NoobChain(new Miner(1), 1, new ConcurrentUtxoStore(),
+                store, snapshots, SNAPSHOT_INTERVAL);
+    }
+
+    private void closeStores() {
+        for (BlockStore store : stores) {
+            store.close();
+        }
+        stores.clear();
+    }
+}
@@ -0,0 +1,318 @@
+package com.basaki.noobchain;
+
+import java.security.PublicKey;
+import java.security.Security;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.ConcurrentModificationException;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class OffHeapUtxoStoreTest {
+
+    private static final int OWNERS = 5;
+
+    private final List<Wallet> wallets = new ArrayList<>();
+
+    private OffHeapUtxoStore store;
+
+    @BeforeClass
+    public static void setUpProvider() {
+        Security.addProvider(new BouncyCastleProvider());
+    }
+
+    @Before
+    public void setUp() {
+        UtxoSet utxos = new UtxoSet();
+        for (int i = 0; i < OWNERS; i++) {
+            wallets.add(new Wallet(utxos));
+        }
+        store = new OffHeapUtxoStore(16);
+    }
+
+    @Test
+    public void testInsertAndRemove() {
+        TransactionOutput first = output(0, 1, "first");
+        TransactionOutput second = output(1, 2, "second");
+        store.apply(Collections.emptyList(), Arrays.asList(first, second));
+
+        assertEquals(2, store.size());
+        assertTrue(store.contains(first.getId()));
+        assertOutputEquals(first, store.get(first.getId()));
+        assertOutputEquals(second, store.get(second.getId()));
+        assertNull(store.get(StringUtil.applySha256("missing")));
+        assertNull(store.get("not a hash"));
+
+        List<TransactionOutput> spent = store.apply(
+                Collections.singletonList(first.getId()),
+                Collections.emptyList());
+        assertEquals(1, spent.size());
+        assertOutputEquals(first, spent.get(0));
+        assertFalse(store.contains(first.getId()));
+        assertEquals(1, store.size());
+    }
+
+    @Test
+    public void testRejectedApplyChangesNothing() {
+        TransactionOutput output = output(0, 1, "output");
+        store.add(output);
+
+        assertNull(store.apply(Arrays.asList(output.getId(),
+                StringUtil.applySha256("missing")),
+                Collections.singletonList(output(1, 1, "created"))));
+        assertNull(store.apply(Arrays.asList(output.getId(), output.getId()),
+                Collections.emptyList()));
+
+        assertEquals(1, store.size());
+        assertTrue(store.contains(output.getId()));
+        assertEquals(0, store.getBalance(address(1)));
+    }
+
+    @Test
+    public void testReinsertAfterTombstones() {
+        List<TransactionOutput> outputs = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            outputs.add(output(i % OWNERS, i + 1, "output" + i));
+        }
+
+        // every round leaves a tombstone per output, which fills the table
+        // and makes it rebuild several times
+        for (int round = 0; round < 50; round++) {
+            store.apply(Collections.emptyList(), outputs);
+            assertEquals(outputs.size(), store.size());
+
+            List<String> ids = new ArrayList<>();
+            for (TransactionOutput output : outputs) {
+                ids.add(output.getId());
+            }
+            assertEquals(outputs.size(),
+                    store.apply(ids, Collections.emptyList()).size());
+            assertEquals(0, store.size());
+        }
+
+        store.apply(Collections.emptyList(), outputs);
+        for (TransactionOutput output : outputs) {
+            assertOutputEquals(output, store.get(output.getId()));
+        }
+    }
+
+    @Test
+    public void testReplaceOutputWithSameId() {
+        TransactionOutput output = output(0, 1, "output");
+        store.add(output);
+        store.add(output);
+
+        assertEquals(1, store.size());
+        assertEquals(Amount.coins(1), store.getBalance(address(0)));
+        assertEquals(1, store.getOutputs(address(0)).size());
+    }
+
+    @Test
+    public void testResize() {
+        List<TransactionOutput> outputs = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            outputs.add(output(i % OWNERS, i + 1, "output" + i));
+        }
+        for (int i = 0; i < outputs.size(); i += 100) {
+            store.apply(Collections.emptyList(), outputs.subList(i, i + 100));
+        }
+
+        assertEquals(outputs.size(), store.size());
+        for (TransactionOutput output : outputs) {
+            assertOutputEquals(output, store.get(output.getId()));
+        }
+
+        // the owners' outputs keep the order they were added in
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < outputs.size(); i += OWNERS) {
+            expected.add(outputs.get(i).getId());
+        }
+        assertEquals(expected, ids(store.getOutputs(address(0))));
+    }
+
+    @Test
+    public void testOwnerIndex() {
+        TransactionOutput a = output(0, 5, "a");
+        TransactionOutput b = output(0, 1, "b");
+        TransactionOutput c = output(0, 3, "c");
+        TransactionOutput other = output(1, 7, "other");
+        store.apply(Collections.emptyList(), Arrays.asList(a, b, c, other));
+
+        assertEquals(Amount.coins(9), store.getBalance(address(0)));
+        assertEquals(Amount.coins(7), store.getBalance(address(1)));
+        assertEquals(0, store.getBalance(address(2)));
+        assertEquals(Arrays.asList(a.getId(), b.getId(), c.getId()),
+                ids(store.getOutputs(address(0))));
+        assertTrue(store.getOutputs(address(2)).isEmpty());
+
+        List<TransactionOutput> selected = store.selectOutputs(address(0),
+                Amount.coins(2), CoinSelector.smallestSufficient());
+        assertEquals(Collections.singletonList(c.getId()), ids(selected));
+        assertNull(store.selectOutputs(address(2), Amount.coins(1),
+                CoinSelector.largestFirst()));
+
+        store.apply(Collections.singletonList(b.getId()),
+                Collections.emptyList());
+        assertEquals(Amount.coins(8), store.getBalance(address(0)));
+        assertEquals(Arrays.asList(a.getId(), c.getId()),
+                ids(store.getOutputs(address(0))));
+    }
+
+    @Test
+    public void testOwnersAreReclaimed() {
+        for (int round = 0; round < 10; round++) {
+            List<TransactionOutput> outputs = new ArrayList<>();
+            for (int i = 0; i < OWNERS; i++) {
+                outputs.add(output((i + round) % OWNERS, i + 1,
+                        "output" + round + "-" + i));
+            }
+            store.apply(Collections.emptyList(), outputs);
+            assertEquals(OWNERS, store.getOwnerCount());
+
+            List<String> ids = ids(outputs);
+            store.apply(ids.subList(0, 2), Collections.emptyList());
+            assertEquals(OWNERS - 2, store.getOwnerCount());
+            store.apply(ids.subList(2, ids.size()), Collections.emptyList());
+            assertEquals(0, store.getOwnerCount());
+            assertEquals(0, store.getBalance(address(round % OWNERS)));
+        }
+
+        // a reused owner number refers to the new owner
+        TransactionOutput output = output(3, 1, "last");
+        store.add(output);
+        assertOutputEquals(output, store.get(output.getId()));
+        assertEquals(Amount.coins(1), store.getBalance(address(3)));
+    }
+
+    @Test
+    public void testTextParent() {
+        TransactionOutput output = new TransactionOutput(
+                wallets.get(0).getPublicKey(), Amount.coins(1), "0");
+        store.add(output);
+
+        assertOutputEquals(output, store.get(output.getId()));
+        store.apply(Collections.singletonList(output.getId()),
+                Collections.emptyList());
+        assertNull(store.get(output.getId()));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testCreatedIdMustBeHash() {
+        store.add(new TransactionOutput("not a hash",
+                wallets.get(0).getPublicKey(), Amount.coins(1), "0"));
+    }
+
+    @Test(expected = ConcurrentModificationException.class)
+    public void testValuesFailAfterApply() {
+        store.add(output(0, 1, "first"));
+        store.add(output(0, 1, "second"));
+
+        Iterator<TransactionOutput> iterator = store.values().iterator();
+        iterator.next();
+        store.add(output(0, 1, "third"));
+        iterator.next();
+    }
+
+    @Test
+    public void testParityWithUtxoSet() {
+        UtxoSet expected = new UtxoSet();
+        Random random = new Random(1);
+        List<String> ids = new ArrayList<>();
+
+        for (int step = 0; step < 5000; step++) {
+            List<String> spent = new ArrayList<>();
+            for (int k = random.nextInt(3); k > 0 && !ids.isEmpty(); k--) {
+                spent.add(ids.get(random.nextInt(ids.size())));
+            }
+            if (random.nextInt(50) == 0) {
+                spent.add(StringUtil.applySha256("missing" + step));
+            }
+
+            List<TransactionOutput> created = new ArrayList<>();
+            for (int k = random.nextInt(4); k > 0; k--) {
+                String parent = random.nextInt(10) == 0 ? "text" + step
+                        : StringUtil.applySha256("parent" + step);
+                created.add(new TransactionOutput(
+                        wallets.get(random.nextInt(OWNERS)).getPublicKey(),
+                        Amount.COIN / 4 * (1 + random.nextInt(100)),
+                        parent));
+            }
+
+            List<TransactionOutput> expectedSpent =
+                    expected.apply(spent, created);
+            List<TransactionOutput> actualSpent = store.apply(spent, created);
+            if (expectedSpent == null) {
+                assertNull(actualSpent);
+                continue;
+            }
+
+            assertNotNull(actualSpent);
+            assertEquals(expectedSpent.size(), actualSpent.size());
+            for (int i = 0; i < expectedSpent.size(); i++) {
+                assertOutputEquals(expectedSpent.get(i), actualSpent.get(i));
+            }
+            ids.removeAll(spent);
+            ids.addAll(ids(created));
+        }
+
+        assertEquals(expected.size(), store.size());
+        assertEquals(new HashSet<>(ids(expected.values())),
+                new HashSet<>(ids(store.values())));
+        for (int i = 0; i < OWNERS; i++) {
+            Address owner = address(i);
+            assertEquals(expected.getBalance(owner), store.getBalance(owner));
+            assertEquals(ids(expected.getOutputs(owner)),
+                    ids(store.getOutputs(owner)));
+            assertEquals(ids(expected.selectOutputs(owner, Amount.coins(30),
+                    CoinSelector.smallestSufficient())),
+                    ids(store.selectOutputs(owner, Amount.coins(30),
+                            CoinSelector.smallestSufficient())));
+        }
+    }
+
+    private TransactionOutput output(int owner, long coins, String parent) {
+        PublicKey key = wallets.get(owner).getPublicKey();
+        return new TransactionOutput(key, Amount.coins(coins),
+                StringUtil.applySha256(parent));
+    }
+
+    private Address address(int owner) {
+        return wallets.get(owner).getAddress();
+    }
+
+    private static List<String> ids(Iterable<TransactionOutput> outputs) {
+        if (outputs == null) {
+            return null;
+        }
+
+        List<String> ids = new ArrayList<>();
+        for (TransactionOutput output : outputs) {
+            ids.add(output.getId());
+        }
+
+        return ids;
+    }
+
+    private static void assertOutputEquals(TransactionOutput expected,
+            TransactionOutput actual) {
+        assertNotNull(actual);
+        assertEquals(expected.getId(), actual.getId());
+        assertEquals(expected.getOwner(), actual.getOwner());
+        assertEquals(expected.getValue(), actual.getValue());
+        assertEquals(expected.getParentTransactionId(),
+                actual.getParentTransactionId());
+    }
+}
@@ -0,0 +1,64 @@
+package com.basaki.noobchain;
+
+import java.security.MessageDigest;
+import java.util.Random;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+
+public class Sha256Test {
+
+    private static final int MAX_LENGTH = 200;
+
+    @Test
+    public void testDigestMatchesMessageDigest() throws Exception {
+        Random random = new Random(1);
+        for (int length = 0; length <= MAX_LENGTH; length++) {
+            byte[] data = new byte[length];
+            random.nextBytes(data);
+
+            assertArrayEquals("Length " + length, expected(data),
+                    new Sha256().update(data).digest());
+        }
+    }
+
+    @Test
+    public void testMidstateMatchesMessageDigest() throws Exception {
+        Random random = new Random(2);
+        for (int length = 0; length <= MAX_LENGTH; length++) {
+            byte[] data = new byte[length];
+            random.nextBytes(data);
+            byte[] expected = expected(data);
+
+            for (int split = 0; split <= length; split++) {
+                Sha256 midstate = new Sha256().update(data, 0, split);
+                Sha256 sha256 = new Sha256();
+
+                // the midstate is reused, as in the proof-of-work
+                for (int i = 0; i < 2; i++) {
+                    byte[] actual = new byte[Sha256.HASH_LENGTH];
+                    sha256.copyFrom(midstate)
+                            .update(data, split, length - split)
+                            .digest(actual, 0);
+                    assertArrayEquals("Length " + length + ", split "
+                            + split, expected, actual);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testDigestResets() throws Exception {
+        byte[] data = new byte[100];
+        new Random(3).nextBytes(data);
+
+        Sha256 sha256 = new Sha256();
+        sha256.update(data, 0, 70).digest();
+
+        assertArrayEquals(expected(data), sha256.update(data).digest());
+    }
+
+    private static byte[] expected(byte[] data) throws Exception {
+        return MessageDigest.getInstance("SHA-256").digest(data);
+    }
+}
@@ -0,0 +1,127 @@
+package com.basaki.noobchain;
+
+import java.security.Security;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SignatureVerifierTest {
+
+    private ForkJoinPool pool;
+
+    private SignatureVerifier verifier;
+
+    private Wallet walletA;
+
+    private Wallet walletB;
+
+    @BeforeClass
+    public static void setUpProvider() {
+        Security.addProvider(new BouncyCastleProvider());
+    }
+
+    @Before
+    public void setUp() {
+        pool = new ForkJoinPool(2);
+        verifier = new SignatureVerifier(pool, 16);
+        UtxoSet utxos = new UtxoSet();
+        walletA = new Wallet(utxos);
+        walletB = new Wallet(utxos);
+    }
+
+    @After
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    @Test
+    public void testValidSignature() {
+        Transaction transaction = sign(Amount.coins(1));
+
+        assertTrue(verifier.verify(transaction));
+        // the second time from the cache
+        assertTrue(verifier.verify(transaction));
+    }
+
+    @Test
+    public void testCacheIsBounded() {
+        List<Transaction> transactions = new ArrayList<>();
+        for (int i = 1; i <= 50; i++) {
+            Transaction transaction = sign(i);
+            transactions.add(transaction);
+            assertTrue(verifier.verify(transaction));
+            assertTrue(verifier.getCacheSize() <= 16);
+        }
+
+        // hits and signatures verified again after their eviction keep the
+        // cache within its bound
+        Transaction latest = transactions.get(transactions.size() - 1);
+        for (int i = 0; i < 20; i++) {
+            assertTrue(verifier.verify(latest));
+            assertTrue(verifier.verify(transactions.get(i)));
+        }
+        assertTrue(verifier.getCacheSize() <= 16);
+    }
+
+    @Test
+    public void testInvalidSignatureIsNotCached() {
+        Transaction transaction = sign(Amount.coins(1));
+        Transaction forged = new Transaction(walletA.getPublicKey(),
+                walletB.getPublicKey(), Amount.coins(2), new ArrayList<>());
+        forged.generateSignature(walletB.getPrivateKey());
+
+        assertFalse(verifier.verify(forged));
+        assertEquals(0, verifier.getCacheSize());
+        assertTrue(verifier.verify(transaction));
+        assertEquals(1, verifier.getCacheSize());
+    }
+
+    @Test
+    public void testMalformedSignatureIsInvalid() {
+        assertFalse(verifier.verify(withSignature(sign(Amount.coins(1)),
+                new byte[] {0x30, 0x7f, 0x02})));
+        assertFalse(verifier.verify(withSignature(sign(Amount.coins(1)),
+                new byte[0])));
+    }
+
+    @Test
+    public void testVerifyAllFindsMalformedSignature() {
+        List<Transaction> transactions = new ArrayList<>();
+        for (int i = 1; i <= 8; i++) {
+            transactions.add(sign(Amount.coins(i)));
+        }
+        assertEquals(-1, verifier.verifyAll(transactions));
+
+        transactions.set(5, withSignature(transactions.get(5),
+                new byte[] {1, 2, 3}));
+        assertEquals(5, verifier.verifyAll(transactions));
+        assertEquals(0, verifier.verifyAll(
+                Collections.singletonList(transactions.get(5))));
+    }
+
+    private Transaction sign(long value) {
+        Transaction transaction = new Transaction(walletA.getPublicKey(),
+                walletB.getPublicKey(), value, new ArrayList<>());
+        transaction.generateSignature(walletA.getPrivateKey());
+
+        return transaction;
+    }
+
+    private static Transaction withSignature(Transaction transaction,
+            byte[] signature) {
+        return new Transaction(transaction.getTransactionId(),
+                transaction.getSender(), transaction.getRecipient(),
+                transaction.getValue(), transaction.getChange(), signature,
+                transaction.getInputs(), transaction.getOutputs());
+    }
+}
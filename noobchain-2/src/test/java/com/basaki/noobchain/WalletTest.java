@@ -0,0 +1,145 @@
+package com.basaki.noobchain;
+
+import java.security.Security;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class WalletTest {
+
+    private NoobChain chain;
+
+    private Wallet walletA;
+
+    private Wallet walletB;
+
+    private Wallet walletC;
+
+    @BeforeClass
+    public static void setUpProvider() {
+        Security.addProvider(new BouncyCastleProvider());
+    }
+
+    @Before
+    public void setUp() {
+        chain = new NoobChain(new Miner(1), 1);
+        walletA = new Wallet(chain);
+        walletB = new Wallet(chain);
+        walletC = new Wallet(chain);
+        Wallet coinbase = new Wallet(chain);
+
+        Transaction genesis = new Transaction(coinbase.getPublicKey(),
+                walletA.getPublicKey(), Amount.coins(100), null);
+        genesis.generateSignature(coinbase.getPrivateKey());
+        genesis.addTransactionOutput(new TransactionOutput(
+                genesis.getRecipient(), genesis.getValue(),
+                genesis.getTransactionId()));
+        chain.addBlock(genesis);
+
+        // gives wallet A a second output
+        chain.addBlock(walletA.sendFunds(walletB.getPublicKey(),
+                Amount.coins(40)));
+        chain.addBlock(walletB.sendFunds(walletA.getPublicKey(),
+                Amount.coins(10)));
+    }
+
+    @Test
+    public void testPendingTransactionsSpendDifferentOutputs() {
+        Transaction first = walletA.sendFunds(walletB.getPublicKey(),
+                Amount.coins(5));
+        assertEquals(Amount.coins(10), walletA.getBalance());
+
+        Transaction second = walletA.sendFunds(walletB.getPublicKey(),
+                Amount.coins(5));
+        assertNotNull(second);
+        assertTrue(Collections.disjoint(inputIds(first), inputIds(second)));
+        assertEquals(0, walletA.getBalance());
+        assertNull(walletA.sendFunds(walletB.getPublicKey(), Amount.coins(1)));
+    }
+
+    @Test
+    public void testUnrelatedBlockKeepsReservations() {
+        Transaction pending = walletA.sendFunds(walletB.getPublicKey(),
+                Amount.coins(5));
+        chain.addBlock(walletB.sendFunds(walletC.getPublicKey(),
+                Amount.coins(1)));
+
+        assertEquals(Amount.coins(10), walletA.getBalance());
+        Transaction next = walletA.sendFunds(walletB.getPublicKey(),
+                Amount.coins(5));
+        assertTrue(Collections.disjoint(inputIds(pending), inputIds(next)));
+    }
+
+    @Test
+    public void testCommittedBlockReleasesSpentOutputs() {
+        Transaction first = walletA.sendFunds(walletB.getPublicKey(),
+                Amount.coins(5));
+        Transaction second = walletA.sendFunds(walletB.getPublicKey(),
+                Amount.coins(5));
+
+        chain.addBlock(first);
+        // the change of the first transaction is spendable, the output of
+        // the second one stays reserved
+        assertEquals(Amount.coins(55), walletA.getBalance());
+
+        chain.addBlock(second);
+        assertEquals(Amount.coins(60), walletA.getBalance());
+        assertEquals(chain.getUtxos().getBalance(walletA.getAddress()),
+                walletA.getBalance());
+    }
+
+    @Test
+    public void testReleaseRejectedTransaction() {
+        Mempool mempool = new Mempool(chain.getUtxos());
+        Transaction transaction = walletA.sendFunds(walletB.getPublicKey(),
+                Amount.coins(5));
+        assertTrue(mempool.submit(transaction));
+        assertFalse(mempool.submit(transaction));
+
+        walletA.release(transaction);
+        assertEquals(Amount.coins(70), walletA.getBalance());
+        assertEquals(inputIds(transaction), inputIds(walletA.sendFunds(
+                walletB.getPublicKey(), Amount.coins(5))));
+    }
+
+    @Test
+    public void testSharedStoreReleasesSpentOutputs() {
+        UtxoSet utxos = new UtxoSet();
+        Wallet wallet = new Wallet(utxos);
+        Wallet recipient = new Wallet(utxos);
+        utxos.add(new TransactionOutput(wallet.getPublicKey(),
+                Amount.coins(3), StringUtil.applySha256("parent")));
+
+        Transaction transaction = wallet.sendFunds(recipient.getPublicKey(),
+                Amount.coins(1));
+        assertEquals(0, wallet.getBalance());
+        assertNull(wallet.sendFunds(recipient.getPublicKey(),
+                Amount.coins(1)));
+
+        // the wallet doesn't get block events, the spent output is no
+        // longer reserved once it's gone from the store
+        assertTrue(transaction.processTransaction(utxos));
+        assertEquals(Amount.coins(2), wallet.getBalance());
+        assertNotNull(wallet.sendFunds(recipient.getPublicKey(),
+                Amount.coins(1)));
+    }
+
+    private static Set<String> inputIds(Transaction transaction) {
+        Set<String> ids = new HashSet<>();
+        for (TransactionInput input : transaction.getInputs()) {
+            ids.add(input.getTransactionOutputId());
+        }
+
+        return ids;
+    }
+}
@@ -0,0 +1,64 @@
+package com.basaki.noobchain;
+
+import java.security.Security;
+import java.util.Random;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+
+/**
+ * {@code BenchmarkSupport} creates the wallets, transactions and chains
+ * shared by the benchmarks.
+ */
+final class BenchmarkSupport {
+
+    // forks get the quiet logging configuration of the benchmarks
+    static final String LOG_CONFIG =
+            "-Dlog4j.configurationFile=log4j2-benchmarks.xml";
+
+    static {
+        Security.addProvider(new BouncyCastleProvider());
+    }
+
+    private BenchmarkSupport() {
+    }
+
+    /**
+     * Creates a wallet, making sure the Bouncy Castle provider is installed.
+     *
+     * @param utxos the unspent transaction outputs the wallet spends from
+     * @return a new wallet
+     */
+    static Wallet newWallet(UtxoStore utxos) {
+        return new Wallet(utxos);
+    }
+
+    /**
+     * Creates the genesis transaction which mints coins for a wallet.
+     *
+     * @param coinbase  wallet signing the genesis transaction
+     * @param recipient wallet receiving the minted coins
+     * @param value     amount minted in the smallest unit
+     * @return the signed genesis transaction with its single output
+     */
+    static Transaction newGenesisTransaction(Wallet coinbase,
+            Wallet recipient, long value) {
+        Transaction txn = new Transaction(coinbase.getPublicKey(),
+                recipient.getPublicKey(), value, null);
+        txn.generateSignature(coinbase.getPrivateKey());
+        txn.addTransactionOutput(new TransactionOutput(txn.getRecipient(),
+                txn.getValue(), txn.getTransactionId()));
+
+        return txn;
+    }
+
+    /**
+     * Creates a random 64 character hexadecimal hash.
+     *
+     * @param random source of randomness
+     * @return a random hash
+     */
+    static String randomHash(Random random) {
+        byte[] bytes = new byte[32];
+        random.nextBytes(bytes);
+        return StringUtil.toString(bytes);
+    }
+}
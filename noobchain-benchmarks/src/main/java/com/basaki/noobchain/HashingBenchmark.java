@@ -0,0 +1,48 @@
+package com.basaki.noobchain;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * {@code HashingBenchmark} measures {@code StringUtil.applySha256} on inputs
+ * of different lengths.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = BenchmarkSupport.LOG_CONFIG)
+@State(Scope.Benchmark)
+public class HashingBenchmark {
+
+    @Param({"64", "141", "1024"})
+    private int inputLength;
+
+    private String input;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(inputLength);
+        StringBuilder builder = new StringBuilder(inputLength);
+        while (builder.length() < inputLength) {
+            builder.append(BenchmarkSupport.randomHash(random));
+        }
+        input = builder.substring(0, inputLength);
+    }
+
+    @Benchmark
+    public String applySha256() {
+        return StringUtil.applySha256(input);
+    }
+}
@@ -0,0 +1,52 @@
+package com.basaki.noobchain;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * {@code MerkleRootBenchmark} measures {@code StringUtil.getMerkleRoot} for
+ * blocks with different numbers of transactions.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = BenchmarkSupport.LOG_CONFIG)
+@State(Scope.Benchmark)
+public class MerkleRootBenchmark {
+
+    @Param({"1", "16", "256", "4096", "65536"})
+    private int transactionCount;
+
+    private List<Transaction> transactions;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(transactionCount);
+        transactions = new ArrayList<>(transactionCount);
+        for (int i = 0; i < transactionCount; i++) {
+            // only the transaction id goes into the merkle tree
+            Transaction txn = new Transaction(null, null, Amount.COIN, null);
+            txn.setTransactionId(BenchmarkSupport.randomHash(random));
+            transactions.add(txn);
+        }
+    }
+
+    @Benchmark
+    public String getMerkleRoot() {
+        return StringUtil.getMerkleRoot(transactions);
+    }
+}
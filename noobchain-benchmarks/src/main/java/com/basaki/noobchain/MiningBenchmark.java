@@ -0,0 +1,53 @@
+package com.basaki.noobchain;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * {@code MiningBenchmark} measures {@code Block.mineBlock} at different
+ * difficulties and with different number of mining threads. Every invocation
+ * mines a block with a new previous hash, so the time averages over the luck
+ * of many nonce searches.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = BenchmarkSupport.LOG_CONFIG)
+@State(Scope.Benchmark)
+public class MiningBenchmark {
+
+    @Param({"2", "3", "4", "5"})
+    private int difficulty;
+
+    @Param({"1", "4"})
+    private int threads;
+
+    private Miner miner;
+
+    private long sequence;
+
+    @Setup
+    public void setUp() {
+        miner = new Miner(threads);
+    }
+
+    @Benchmark
+    public String mineBlock() {
+        Block block = new Block(StringUtil.applySha256(
+                Long.toString(sequence++)));
+        block.mineBlock(difficulty, miner);
+
+        return block.getHash();
+    }
+}
@@ -0,0 +1,60 @@
+package com.basaki.noobchain;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * {@code SignatureBenchmark} measures signing and verifying a transaction
+ * with ECDSA.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = BenchmarkSupport.LOG_CONFIG)
+@State(Scope.Benchmark)
+public class SignatureBenchmark {
+
+    private Wallet sender;
+
+    private Wallet recipient;
+
+    private Transaction signed;
+
+    @Setup
+    public void setUp() {
+        UtxoStore utxos = new UtxoSet();
+        sender = BenchmarkSupport.newWallet(utxos);
+        recipient = BenchmarkSupport.newWallet(utxos);
+        signed = newTransaction();
+        signed.generateSignature(sender.getPrivateKey());
+    }
+
+    @Benchmark
+    public Transaction generateSignature() {
+        // a transaction can only be signed once
+        Transaction txn = newTransaction();
+        txn.generateSignature(sender.getPrivateKey());
+
+        return txn;
+    }
+
+    @Benchmark
+    public boolean verifySignature() {
+        return signed.verifySignature();
+    }
+
+    private Transaction newTransaction() {
+        return new Transaction(sender.getPublicKey(),
+                recipient.getPublicKey(), Amount.coins(5), null);
+    }
+}
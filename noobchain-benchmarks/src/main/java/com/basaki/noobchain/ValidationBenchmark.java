@@ -0,0 +1,102 @@
+package com.basaki.noobchain;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * {@code ValidationBenchmark} measures a full validation of chains of
+ * different lengths. The chains are mined at difficulty 1 to keep
+ * the setup short, and every tenth block carries a signed transaction.
+ * <p>
+ * A cold validation verifies every signature with a new verifier, as a node
+ * does for blocks it hasn't seen before. A warm validation finds every
+ * signature in the verifier's cache.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = BenchmarkSupport.LOG_CONFIG)
+@State(Scope.Benchmark)
+public class ValidationBenchmark {
+
+    private static final int DIFFICULTY = 1;
+
+    private static final int TRANSACTION_INTERVAL = 10;
+
+    @Param({"1000", "10000", "100000"})
+    private int blockCount;
+
+    private List<Block> blocks;
+
+    private Transaction genesisTransaction;
+
+    private ChainValidator warmValidator;
+
+    private ChainValidator coldValidator;
+
+    @Setup
+    public void setUp() {
+        NoobChain chain = new NoobChain(new Miner(1), DIFFICULTY);
+        Wallet coinbase = BenchmarkSupport.newWallet(chain.getUtxos());
+        Wallet walletA = BenchmarkSupport.newWallet(chain.getUtxos());
+        Wallet walletB = BenchmarkSupport.newWallet(chain.getUtxos());
+
+        genesisTransaction = BenchmarkSupport.newGenesisTransaction(coinbase,
+                walletA, Amount.coins(blockCount));
+        chain.addBlock(genesisTransaction);
+
+        for (int i = 1; i < blockCount; i++) {
+            Transaction txn = null;
+            if (i % TRANSACTION_INTERVAL == 0) {
+                txn = walletA.sendFunds(walletB.getPublicKey(),
+                        Amount.COIN);
+            }
+            chain.addBlock(txn);
+        }
+
+        blocks = new ArrayList<>(blockCount);
+        for (int height = 0; height < blockCount; height++) {
+            blocks.add(chain.getIndex().getBlock(height));
+        }
+
+        warmValidator = newValidator();
+        if (!warmValidator.validate(blocks, genesisTransaction).isValid()) {
+            throw new IllegalStateException("Benchmark chain is invalid");
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void setUpColdValidator() {
+        coldValidator = newValidator();
+    }
+
+    @Benchmark
+    public boolean validateCold() {
+        return coldValidator.validate(blocks, genesisTransaction).isValid();
+    }
+
+    @Benchmark
+    public boolean validateWarm() {
+        return warmValidator.validate(blocks, genesisTransaction).isValid();
+    }
+
+    private static ChainValidator newValidator() {
+        return new ChainValidator(DIFFICULTY, ForkJoinPool.commonPool(),
+                new SignatureVerifier());
+    }
+}
@@ -0,0 +1,66 @@
+package com.basaki.noobchain;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * {@code WalletBenchmark} measures {@code Wallet.getBalance} while the
+ * unspent transaction outputs of the whole chain grow. The measured wallet
+ * always owns the same few outputs.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = BenchmarkSupport.LOG_CONFIG)
+@State(Scope.Benchmark)
+public class WalletBenchmark {
+
+    private static final int OWNED_OUTPUTS = 10;
+
+    private static final int OTHER_WALLETS = 16;
+
+    @Param({"1000", "10000", "100000", "1000000"})
+    private int utxoCount;
+
+    private Wallet wallet;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(utxoCount);
+        UtxoStore utxos = new ConcurrentUtxoStore();
+        wallet = BenchmarkSupport.newWallet(utxos);
+
+        List<Wallet> others = new ArrayList<>(OTHER_WALLETS);
+        for (int i = 0; i < OTHER_WALLETS; i++) {
+            others.add(BenchmarkSupport.newWallet(utxos));
+        }
+
+        for (int i = 0; i < utxoCount; i++) {
+            Wallet owner = i < OWNED_OUTPUTS ? wallet
+                    : others.get(i % OTHER_WALLETS);
+            TransactionOutput output = new TransactionOutput(
+                    owner.getPublicKey(), Amount.COIN,
+                    BenchmarkSupport.randomHash(random));
+            utxos.add(output);
+        }
+    }
+
+    @Benchmark
+    public long getBalance() {
+        return wallet.getBalance();
+    }
+}